@@ -1,5 +1,7 @@
 /**
  * The AbstractSapFinder abstract class defines basic features of SapFinder.
+ * Subclasses implement packed queries only, SapAnswer objects are built from
+ * packed answers.
  *
  * @author Sergey Esipenko
  */
@@ -8,7 +10,7 @@ public abstract class AbstractSapFinder implements SapFinder {
     /**
      * Digraph where BFS is running.
      */
-    private final Digraph digraph;
+    private final CompactDigraph digraph;
 
     /**
      * Constructor takes digraph.
@@ -16,16 +18,137 @@ public abstract class AbstractSapFinder implements SapFinder {
      * @param directedGraph
      *            digraph for SAP processing.
      */
-    public AbstractSapFinder(final Digraph directedGraph) {
+    public AbstractSapFinder(final CompactDigraph directedGraph) {
         this.digraph = directedGraph;
     }
 
+    @Override
+    public final SapAnswer sap(final int first, final int second) {
+        return SapAnswer.unpack(packedSap(first, second));
+    }
+
+    @Override
+    public final SapAnswer sap(final Iterable<Integer> first,
+            final Iterable<Integer> second) {
+        return SapAnswer.unpack(packedSap(first, second));
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int[] second) {
+        return packedSap(first, 0, first.length, second, 0, second.length);
+    }
+
+    /**
+     * Performs the full query and drops too long answer. Subclasses which
+     * search the graph should stop the search early.
+     *
+     * @param first
+     *            first vertex
+     * @param second
+     *            second vertex
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path of length at
+     *         most maxLength
+     */
+    @Override
+    public long packedSap(final int first, final int second,
+            final int maxLength) {
+        return SapAnswer.bound(packedSap(first, second), maxLength);
+    }
+
+    /**
+     * Performs the full query and drops too long answer.
+     *
+     * @param first
+     *            first set of vertices
+     * @param second
+     *            second set of vertices
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path of length at
+     *         most maxLength
+     */
+    @Override
+    public long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second, final int maxLength) {
+        return SapAnswer.bound(packedSap(first, second), maxLength);
+    }
+
+    /**
+     * Performs the full query and drops too long answer.
+     *
+     * @param first
+     *            array with the first set of vertices
+     * @param firstFrom
+     *            beginning of the first set in array (inclusive)
+     * @param firstTo
+     *            end of the first set in array (exclusive)
+     * @param second
+     *            array with the second set of vertices
+     * @param secondFrom
+     *            beginning of the second set in array (inclusive)
+     * @param secondTo
+     *            end of the second set in array (exclusive)
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path of length at
+     *         most maxLength
+     */
+    @Override
+    public long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo, final int maxLength) {
+        return SapAnswer.bound(packedSap(first, firstFrom, firstTo, second,
+                secondFrom, secondTo), maxLength);
+    }
+
+    /**
+     * Objects precompute data by default, so they don't support growth.
+     *
+     * @return false
+     */
+    @Override
+    public boolean supportsGrowth() {
+        return false;
+    }
+
+    /**
+     * Does nothing: objects which read the digraph on every query have
+     * nothing to update.
+     *
+     * @param v
+     *            the new vertex
+     */
+    @Override
+    public void vertexAdded(final int v) {
+    }
+
+    /**
+     * Does nothing: objects which read the digraph on every query have
+     * nothing to update.
+     *
+     * @param from
+     *            tail of the new edge
+     * @param to
+     *            head of the new edge
+     * @param affected
+     *            the tail and all vertices it is reachable from
+     */
+    @Override
+    public void edgeAdded(final int from, final int to,
+            final int[] affected) {
+    }
+
     /**
      * Getter for digraph.
      *
      * @return digraph connected to object
      */
-    public final Digraph getDigraph() {
+    public final CompactDigraph getDigraph() {
         return digraph;
     }
 }
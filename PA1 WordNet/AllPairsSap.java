@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+/**
+ * The AllPairsSap class computes lengths of shortest ancestral paths between
+ * all pairs of given vertex sets.
+ * <p>
+ * This implementation runs one BFS per set (instead of two BFS per pair) and
+ * stores distances to all reachable ancestors as a list sorted by vertex. The
+ * length for a pair of sets is a merge of their lists. The matrix is
+ * symmetric, so only its upper triangle is merged; rows are processed in
+ * parallel.
+ *
+ * @author Sergey Esipenko
+ */
+public class AllPairsSap {
+
+    /**
+     * Number of bits for storing distance in list element.
+     */
+    private static final int DIST_BITS = 32;
+
+    /**
+     * Mask for extracting distance from list element.
+     */
+    private static final long DIST_MASK = (1L << DIST_BITS) - 1;
+
+    /**
+     * Number of rows processed by one parallel task.
+     */
+    private static final int ROWS_GRAIN = 4;
+
+    /**
+     * Sorted ancestors lists of sets, each element is (vertex << 32 | dist).
+     */
+    private final long[][] lists;
+
+    /**
+     * Constructor takes digraph and vertex sets. Set k consists of
+     * vertices[begins[k]] ... vertices[ends[k] - 1].
+     *
+     * @param digraph
+     *            digraph for SAP processing
+     * @param vertices
+     *            vertices of all sets
+     * @param begins
+     *            beginnings of sets (inclusive)
+     * @param ends
+     *            ends of sets (exclusive)
+     */
+    public AllPairsSap(final CompactDigraph digraph, final int[] vertices,
+            final int[] begins, final int[] ends) {
+        Utils.check(begins.length == ends.length,
+                new IllegalArgumentException("Arrays must have same length"));
+        final LayeredBreadthFirstDirectedSearch bfs =
+                new LayeredBreadthFirstDirectedSearch(digraph);
+        this.lists = new long[begins.length][];
+        for (int k = 0; k < begins.length; k++) {
+            bfs.prepare(vertices, begins[k], ends[k]);
+            while (bfs.hasNextLayer()) {
+                bfs.nextLayer();
+            }
+            final long[] list = new long[bfs.visitedCount()];
+            for (int i = 0; i < list.length; i++) {
+                final int v = bfs.visited(i);
+                list[i] = ((long) v << DIST_BITS) | bfs.distTo(v);
+            }
+            Arrays.sort(list);
+            lists[k] = list;
+        }
+    }
+
+    /**
+     * Computes lengths of shortest ancestral paths between all pairs of sets.
+     *
+     * @return matrix of lengths (-1 if there is no such path)
+     */
+    public final int[][] lengths() {
+        final int[][] lengths = new int[lists.length][lists.length];
+        ParallelRangeTask.invoke(new ParallelRangeTask.RangeProcessor() {
+            @Override
+            public void process(final int from, final int to) {
+                for (int i = from; i < to; i++) {
+                    for (int j = i; j < lists.length; j++) {
+                        lengths[i][j] = length(lists[i], lists[j]);
+                        lengths[j][i] = lengths[i][j];
+                    }
+                }
+            }
+        }, lists.length, ROWS_GRAIN);
+        return lengths;
+    }
+
+    /**
+     * Merges two sorted ancestors lists.
+     *
+     * @param list1
+     *            first list
+     * @param list2
+     *            second list
+     * @return length of shortest ancestral path; -1 if there is no such path
+     */
+    private static int length(final long[] list1, final long[] list2) {
+        int best = -1;
+        int i = 0;
+        int j = 0;
+        while (i < list1.length && j < list2.length) {
+            final long a = list1[i] >>> DIST_BITS;
+            final long b = list2[j] >>> DIST_BITS;
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                final int length = (int) ((list1[i++] & DIST_MASK)
+                        + (list2[j++] & DIST_MASK));
+                if (best == -1 || best > length) {
+                    best = length;
+                }
+            }
+        }
+        return best;
+    }
+}
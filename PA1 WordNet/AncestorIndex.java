@@ -0,0 +1,426 @@
+import java.util.Arrays;
+
+/**
+ * The AncestorIndex class stores precomputed ancestors of each vertex of a DAG
+ * together with lengths of shortest paths to them. Ancestors of each vertex
+ * are sorted by index, so SAP query for two vertices is a merge of two sorted
+ * arrays.
+ * <p>
+ * This implementation stores ancestors of all vertices in two flat arrays
+ * (ancestors and distances), the vertex v owns the range from begin(v)
+ * (inclusive) to end(v) (exclusive). Each vertex is an ancestor of itself
+ * with distance 0.
+ * <p>
+ * The index follows growth of the DAG: a new vertex gets the merged ancestors
+ * of its hypernyms, a new edge gives new ranges to the vertices which reach
+ * its tail (their old ranges stay unused, so the storage grows with each
+ * update). Updates take time proportional to the sizes of the touched ranges.
+ * The index is thread-safe if updates aren't concurrent with queries.
+ *
+ * @author Sergey Esipenko
+ */
+public class AncestorIndex {
+
+    /**
+     * Initial capacity of arrays with ancestors.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Beginnings of vertex ranges (it may have spare capacity).
+     */
+    private int[] begins;
+
+    /**
+     * Ends of vertex ranges (it may have spare capacity).
+     */
+    private int[] ends;
+
+    /**
+     * Ancestors of all vertices.
+     */
+    private int[] ancestors;
+
+    /**
+     * Distances to ancestors of all vertices.
+     */
+    private int[] distances;
+
+    /**
+     * Number of stored ancestors.
+     */
+    private int size;
+
+    /**
+     * Constructor takes a DAG. Throws IllegalArgumentException if digraph has
+     * a cycle.
+     *
+     * @param dag
+     *            directed acyclic graph
+     */
+    public AncestorIndex(final CompactDigraph dag) {
+        this(dag, new TopologicalSort(dag));
+    }
+
+    /**
+     * Constructor takes a DAG and its topological sort. Throws
+     * IllegalArgumentException if digraph has a cycle.
+     *
+     * @param dag
+     *            directed acyclic graph
+     * @param sort
+     *            topological sort of the digraph
+     */
+    public AncestorIndex(final CompactDigraph dag,
+            final TopologicalSort sort) {
+        final int[] order = sort.order();
+        Utils.check(order != null, new IllegalArgumentException(
+                "Given graph isn't DAG"));
+        this.begins = new int[dag.V()];
+        this.ends = new int[dag.V()];
+        this.ancestors = new int[Math.max(INITIAL_CAPACITY, dag.V())];
+        this.distances = new int[ancestors.length];
+        build(dag, order);
+        this.ancestors = Arrays.copyOf(ancestors, size);
+        this.distances = Arrays.copyOf(distances, size);
+    }
+
+    /**
+     * Constructor takes ready index arrays (e.g. read from snapshot). Arrays
+     * are not copied.
+     *
+     * @param vertexBegins
+     *            beginnings of vertex ranges
+     * @param vertexEnds
+     *            ends of vertex ranges
+     * @param allAncestors
+     *            ancestors of all vertices (sorted inside each range)
+     * @param allDistances
+     *            distances to ancestors of all vertices
+     */
+    public AncestorIndex(final int[] vertexBegins, final int[] vertexEnds,
+            final int[] allAncestors, final int[] allDistances) {
+        Utils.check(vertexBegins.length == vertexEnds.length
+                && allAncestors.length == allDistances.length,
+                new IllegalArgumentException("Index arrays are inconsistent"));
+        this.begins = vertexBegins;
+        this.ends = vertexEnds;
+        this.ancestors = allAncestors;
+        this.distances = allDistances;
+        this.size = allAncestors.length;
+    }
+
+    /**
+     * Returns beginning of ancestors range of vertex v.
+     *
+     * @param v
+     *            the vertex
+     * @return beginning of range (inclusive)
+     */
+    public final int begin(final int v) {
+        return begins[v];
+    }
+
+    /**
+     * Returns end of ancestors range of vertex v.
+     *
+     * @param v
+     *            the vertex
+     * @return end of range (exclusive)
+     */
+    public final int end(final int v) {
+        return ends[v];
+    }
+
+    /**
+     * Returns ancestor stored at given position.
+     *
+     * @param i
+     *            position in range of some vertex
+     * @return ancestor's index
+     */
+    public final int ancestor(final int i) {
+        return ancestors[i];
+    }
+
+    /**
+     * Returns length of shortest path to ancestor stored at given position.
+     *
+     * @param i
+     *            position in range of some vertex
+     * @return length of shortest path to ancestor
+     */
+    public final int distance(final int i) {
+        return distances[i];
+    }
+
+    /**
+     * Returns total number of stored ancestors.
+     *
+     * @return total number of stored ancestors
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Indexes a new vertex of the DAG. Its hypernyms must be indexed already
+     * and it must have no hyponyms.
+     *
+     * @param dag
+     *            directed acyclic graph containing the vertex
+     * @param v
+     *            the new vertex
+     */
+    public final void addVertex(final CompactDigraph dag, final int v) {
+        if (v >= begins.length) {
+            final int capacity = Math.max(v + 1, 2 * begins.length);
+            begins = Arrays.copyOf(begins, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        addRange(dag, v, new MergeBuffers());
+    }
+
+    /**
+     * Updates the index after edge (from, to) was added to the DAG. Each
+     * affected vertex gets ancestors of the head at distances through the new
+     * edge; its distance to the tail doesn't change, since the DAG has no
+     * path from the head back to the tail.
+     *
+     * @param from
+     *            tail of the new edge
+     * @param to
+     *            head of the new edge
+     * @param affected
+     *            the tail and all vertices it is reachable from
+     */
+    public final void addEdge(final int from, final int to,
+            final int[] affected) {
+        final MergeBuffers buffers = new MergeBuffers();
+        for (int v : affected) {
+            final int position = Arrays.binarySearch(ancestors, begins[v],
+                    ends[v], from);
+            if (position < 0) {
+                throw new IllegalArgumentException("Vertex " + v
+                        + " doesn't reach " + from);
+            }
+            final int rangeSize = ends[v] - begins[v];
+            buffers.ensureCapacity(rangeSize + ends[to] - begins[to]);
+            System.arraycopy(ancestors, begins[v], buffers.merged, 0,
+                    rangeSize);
+            System.arraycopy(distances, begins[v], buffers.mergedDists, 0,
+                    rangeSize);
+            final int size = merge(buffers.merged, buffers.mergedDists,
+                    rangeSize, to, distances[position] + 1, buffers.buffer,
+                    buffers.bufferDists);
+            append(v, buffers.buffer, buffers.bufferDists, size);
+        }
+    }
+
+    /**
+     * Performs a SAP query for two vertices by merging their ancestors.
+     *
+     * @param v
+     *            first vertex
+     * @param w
+     *            second vertex
+     * @return answer for the query packed by SapAnswer.pack()
+     */
+    public final long packedSap(final int v, final int w) {
+        int bestLength = -1;
+        int bestAncestor = -1;
+        int i = begins[v];
+        int j = begins[w];
+        final int iEnd = ends[v];
+        final int jEnd = ends[w];
+        while (i < iEnd && j < jEnd) {
+            final int a = ancestors[i];
+            final int b = ancestors[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                final int length = distances[i++] + distances[j++];
+                if (bestLength == -1 || bestLength > length) {
+                    bestLength = length;
+                    bestAncestor = a;
+                }
+            }
+        }
+        return SapAnswer.pack(bestLength, bestAncestor);
+    }
+
+    /**
+     * Fills ranges of all vertices. Vertices are processed from the roots to
+     * the leaves, so ranges of all hypernyms are ready when the vertex is
+     * processed.
+     *
+     * @param dag
+     *            directed acyclic graph
+     * @param order
+     *            topological order of vertices (leaves first)
+     */
+    private void build(final CompactDigraph dag, final int[] order) {
+        final MergeBuffers buffers = new MergeBuffers();
+        for (int k = order.length - 1; k >= 0; k--) {
+            addRange(dag, order[k], buffers);
+        }
+    }
+
+    /**
+     * Stores ancestors of vertex merged from ranges of its hypernyms.
+     *
+     * @param dag
+     *            directed acyclic graph
+     * @param v
+     *            the vertex
+     * @param buffers
+     *            buffers for merging
+     */
+    private void addRange(final CompactDigraph dag, final int v,
+            final MergeBuffers buffers) {
+        int mergedSize = 1;
+        buffers.merged[0] = v;
+        buffers.mergedDists[0] = 0;
+        for (int e = dag.begin(v); e < dag.end(v); e++) {
+            final int parent = dag.target(e);
+            buffers.ensureCapacity(mergedSize + ends[parent] - begins[parent]);
+            mergedSize = merge(buffers.merged, buffers.mergedDists,
+                    mergedSize, parent, 1, buffers.buffer,
+                    buffers.bufferDists);
+            buffers.swap();
+        }
+        append(v, buffers.merged, buffers.mergedDists, mergedSize);
+    }
+
+    /**
+     * Merges sorted list of ancestors with ancestors of parent (each path
+     * becomes longer by given shift). Duplicates are merged by taking minimal
+     * distance.
+     *
+     * @param list
+     *            sorted list of ancestors
+     * @param listDists
+     *            distances to ancestors from list
+     * @param listSize
+     *            size of list
+     * @param parent
+     *            parent which ancestors are merged
+     * @param shift
+     *            distance added to paths from parent
+     * @param result
+     *            array for storing result
+     * @param resultDists
+     *            array for storing distances of result
+     * @return size of result
+     */
+    private int merge(final int[] list, final int[] listDists,
+            final int listSize, final int parent, final int shift,
+            final int[] result, final int[] resultDists) {
+        int i = 0;
+        int j = begins[parent];
+        final int jEnd = ends[parent];
+        int k = 0;
+        while (i < listSize || j < jEnd) {
+            if (j == jEnd || (i < listSize && list[i] < ancestors[j])) {
+                result[k] = list[i];
+                resultDists[k++] = listDists[i++];
+            } else if (i == listSize || list[i] > ancestors[j]) {
+                result[k] = ancestors[j];
+                resultDists[k++] = distances[j++] + shift;
+            } else {
+                result[k] = list[i];
+                resultDists[k++] = Math.min(listDists[i++],
+                        distances[j++] + shift);
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Stores ancestors of vertex v.
+     *
+     * @param v
+     *            the vertex
+     * @param list
+     *            sorted list of ancestors
+     * @param listDists
+     *            distances to ancestors
+     * @param listSize
+     *            size of list
+     */
+    private void append(final int v, final int[] list, final int[] listDists,
+            final int listSize) {
+        if (ancestors.length < size + listSize) {
+            final int capacity = Math.max(2 * ancestors.length,
+                    size + listSize);
+            ancestors = Arrays.copyOf(ancestors, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+        }
+        System.arraycopy(list, 0, ancestors, size, listSize);
+        System.arraycopy(listDists, 0, distances, size, listSize);
+        begins[v] = size;
+        size += listSize;
+        ends[v] = size;
+    }
+
+    /**
+     * Pair of lists used for merging: the merged list and the buffer for the
+     * next merge result.
+     *
+     * @author Sergey Esipenko
+     */
+    private static final class MergeBuffers {
+
+        /**
+         * Merged ancestors.
+         */
+        private int[] merged = new int[INITIAL_CAPACITY];
+
+        /**
+         * Distances to merged ancestors.
+         */
+        private int[] mergedDists = new int[INITIAL_CAPACITY];
+
+        /**
+         * Buffer for ancestors.
+         */
+        private int[] buffer = new int[INITIAL_CAPACITY];
+
+        /**
+         * Buffer for distances.
+         */
+        private int[] bufferDists = new int[INITIAL_CAPACITY];
+
+        /**
+         * Enlarges the buffer (and the merged list for copying into it) if
+         * necessary. Content of the merged list is kept.
+         *
+         * @param required
+         *            required capacity
+         */
+        void ensureCapacity(final int required) {
+            if (buffer.length < required) {
+                buffer = new int[2 * required];
+                bufferDists = new int[2 * required];
+            }
+            if (merged.length < required) {
+                merged = Arrays.copyOf(merged, 2 * required);
+                mergedDists = Arrays.copyOf(mergedDists, 2 * required);
+            }
+        }
+
+        /**
+         * Makes the buffer the merged list.
+         */
+        void swap() {
+            int[] tmp = merged;
+            merged = buffer;
+            buffer = tmp;
+            tmp = mergedDists;
+            mergedDists = bufferDists;
+            bufferDists = tmp;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Indexed helper class for the SAP data type. It works for DAGs only, but
+ * answers queries without any graph traversal.
+ * <p>
+ * This implementation precomputes AncestorIndex at construction time. SAP
+ * query for two vertices is a merge of their sorted ancestors lists, query for
+ * two sets of vertices merges lists of each pair of vertices. Growth of the
+ * DAG is followed by updating the index for the changed vertices only. The
+ * object is thread-safe if updates aren't concurrent with queries.
+ *
+ * @author Sergey Esipenko
+ */
+public class AncestorIndexSapFinder extends AbstractSapFinder {
+
+    /**
+     * Factory of AncestorIndexSapFinder objects.
+     */
+    public static final DagSapFinderFactory FACTORY =
+            new DagSapFinderFactory() {
+        @Override
+        public SapFinder create(final CompactDigraph digraph) {
+            return new AncestorIndexSapFinder(digraph);
+        }
+
+        @Override
+        public SapFinder create(final CompactDigraph dag,
+                final TopologicalSort sort) {
+            return new AncestorIndexSapFinder(dag,
+                    new AncestorIndex(dag, sort));
+        }
+
+        @Override
+        public boolean supportsGrowth() {
+            return true;
+        }
+    };
+
+    /**
+     * Precomputed ancestors of all vertices.
+     */
+    private final AncestorIndex index;
+
+    /**
+     * Constructor takes DAG. Throws IllegalArgumentException if digraph has a
+     * cycle.
+     *
+     * @param dag
+     *            directed acyclic graph for SAP processing
+     */
+    public AncestorIndexSapFinder(final CompactDigraph dag) {
+        this(dag, new AncestorIndex(dag));
+    }
+
+    /**
+     * Constructor takes DAG and its ready ancestor index.
+     *
+     * @param dag
+     *            directed acyclic graph for SAP processing
+     * @param ancestorIndex
+     *            ancestor index of the DAG
+     */
+    public AncestorIndexSapFinder(final CompactDigraph dag,
+            final AncestorIndex ancestorIndex) {
+        super(dag);
+        this.index = ancestorIndex;
+    }
+
+    /**
+     * Getter for the ancestor index.
+     *
+     * @return ancestor index of digraph
+     */
+    public final AncestorIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public final boolean supportsGrowth() {
+        return true;
+    }
+
+    @Override
+    public final void vertexAdded(final int v) {
+        index.addVertex(getDigraph(), v);
+    }
+
+    @Override
+    public final void edgeAdded(final int from, final int to,
+            final int[] affected) {
+        index.addEdge(from, to, affected);
+    }
+
+    @Override
+    public final long packedSap(final int first, final int second) {
+        return index.packedSap(first, second);
+    }
+
+    @Override
+    public final long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second) {
+        long best = SapAnswer.NO_ANSWER;
+        for (int v : first) {
+            for (int w : second) {
+                final long packed = index.packedSap(v, w);
+                if (packed != SapAnswer.NO_ANSWER
+                        && (best == SapAnswer.NO_ANSWER || SapAnswer
+                                .unpackLength(best) > SapAnswer
+                                .unpackLength(packed))) {
+                    best = packed;
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo) {
+        long best = SapAnswer.NO_ANSWER;
+        for (int i = firstFrom; i < firstTo; i++) {
+            for (int j = secondFrom; j < secondTo; j++) {
+                final long packed = index.packedSap(first[i], second[j]);
+                if (packed != SapAnswer.NO_ANSWER
+                        && (best == SapAnswer.NO_ANSWER || SapAnswer
+                                .unpackLength(best) > SapAnswer
+                                .unpackLength(packed))) {
+                    best = packed;
+                }
+            }
+        }
+        return best;
+    }
+}
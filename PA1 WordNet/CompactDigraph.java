@@ -0,0 +1,284 @@
+import java.util.Arrays;
+
+/**
+ * The CompactDigraph class is a directed graph stored in compressed sparse row
+ * (CSR) format. It is designed for fast traversals: adjacent vertices are
+ * stored in a flat int array, so edge relaxation needs neither boxing nor
+ * iterators.
+ * <p>
+ * Edges outgoing from the vertex v have indexes from begin(v) (inclusive) to
+ * end(v) (exclusive), target(e) returns the head of the edge e. Edges of each
+ * vertex keep the order of Digraph.adj() of the source digraph.
+ * <p>
+ * The digraph may grow: addVertex() and addEdge() take amortized constant
+ * time. Arrays have spare capacity, a vertex which gets a new edge moves its
+ * range to the end of edges array unless the range is already there, so
+ * edge indexes are not contiguous after growth (ranges are packed again when
+ * the array is reallocated). Growth isn't thread-safe:
+ * callers must exclude concurrent readers. Digraphs which never grow may be
+ * shared between threads freely.
+ *
+ * @author Sergey Esipenko
+ */
+public final class CompactDigraph {
+
+    /**
+     * Minimal capacity of arrays after growth.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Beginnings of vertex edge ranges.
+     */
+    private int[] begins;
+
+    /**
+     * Ends of vertex edge ranges.
+     */
+    private int[] ends;
+
+    /**
+     * Heads of all edges (unused slots are left by moved ranges).
+     */
+    private int[] targets;
+
+    /**
+     * Number of vertices.
+     */
+    private int vertices;
+
+    /**
+     * Number of edges.
+     */
+    private int edges;
+
+    /**
+     * Number of used slots of targets array.
+     */
+    private int slots;
+
+    /**
+     * Constructor takes a digraph and copies its edges.
+     *
+     * @param digraph
+     *            source digraph
+     */
+    public CompactDigraph(final Digraph digraph) {
+        this.vertices = digraph.V();
+        this.edges = digraph.E();
+        this.slots = edges;
+        this.begins = new int[vertices];
+        this.ends = new int[vertices];
+        this.targets = new int[edges];
+        int e = 0;
+        for (int v = 0; v < vertices; v++) {
+            begins[v] = e;
+            for (int w : digraph.adj(v)) {
+                targets[e++] = w;
+            }
+            ends[v] = e;
+        }
+    }
+
+    /**
+     * Constructor takes ready CSR arrays. Arrays are not copied.
+     *
+     * @param edgeOffsets
+     *            offsets of vertex edge ranges (V + 1 non-decreasing elements,
+     *            starting with 0)
+     * @param edgeTargets
+     *            heads of all edges
+     */
+    public CompactDigraph(final int[] edgeOffsets, final int[] edgeTargets) {
+        Utils.check(edgeOffsets.length > 0 && edgeOffsets[0] == 0
+                && edgeOffsets[edgeOffsets.length - 1] == edgeTargets.length,
+                new IllegalArgumentException("Offsets are inconsistent"));
+        this.vertices = edgeOffsets.length - 1;
+        for (int v = 0; v < vertices; v++) {
+            if (edgeOffsets[v] > edgeOffsets[v + 1]) {
+                throw new IllegalArgumentException("Offsets are inconsistent");
+            }
+        }
+        for (int w : edgeTargets) {
+            if (w < 0 || w >= vertices) {
+                throw new IndexOutOfBoundsException();
+            }
+        }
+        this.edges = edgeTargets.length;
+        this.slots = edges;
+        this.begins = Arrays.copyOf(edgeOffsets, vertices);
+        this.ends = Arrays.copyOfRange(edgeOffsets, 1, vertices + 1);
+        this.targets = edgeTargets;
+    }
+
+    /**
+     * Returns the number of vertices.
+     *
+     * @return the number of vertices
+     */
+    public int V() {
+        return vertices;
+    }
+
+    /**
+     * Returns the number of edges.
+     *
+     * @return the number of edges
+     */
+    public int E() {
+        return edges;
+    }
+
+    /**
+     * Returns index of the first edge outgoing from the vertex v.
+     *
+     * @param v
+     *            the vertex
+     * @return beginning of edge range (inclusive)
+     */
+    public int begin(final int v) {
+        return begins[v];
+    }
+
+    /**
+     * Returns index after the last edge outgoing from the vertex v.
+     *
+     * @param v
+     *            the vertex
+     * @return end of edge range (exclusive)
+     */
+    public int end(final int v) {
+        return ends[v];
+    }
+
+    /**
+     * Returns head of the edge e.
+     *
+     * @param e
+     *            edge index
+     * @return vertex which the edge points to
+     */
+    public int target(final int e) {
+        return targets[e];
+    }
+
+    /**
+     * Returns the number of edges outgoing from the vertex v.
+     *
+     * @param v
+     *            the vertex
+     * @return out-degree of the vertex
+     */
+    public int outdegree(final int v) {
+        return ends[v] - begins[v];
+    }
+
+    /**
+     * Returns the reverse of this digraph.
+     *
+     * @return digraph with all edges reversed
+     */
+    public CompactDigraph reverse() {
+        final int[] reverseOffsets = new int[vertices + 1];
+        for (int v = 0; v < vertices; v++) {
+            for (int e = begins[v]; e < ends[v]; e++) {
+                reverseOffsets[targets[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < vertices; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+        final int[] positions = Arrays.copyOf(reverseOffsets, vertices);
+        final int[] reverseTargets = new int[edges];
+        for (int v = 0; v < vertices; v++) {
+            for (int e = begins[v]; e < ends[v]; e++) {
+                reverseTargets[positions[targets[e]]++] = v;
+            }
+        }
+        return new CompactDigraph(reverseOffsets, reverseTargets);
+    }
+
+    /**
+     * Copies this digraph into a Digraph object.
+     *
+     * @return Digraph object with the same edges
+     */
+    public Digraph toDigraph() {
+        final Digraph digraph = new Digraph(vertices);
+        for (int v = 0; v < vertices; v++) {
+            // Digraph.adj() returns edges in reverse order of addition
+            for (int e = ends[v] - 1; e >= begins[v]; e--) {
+                digraph.addEdge(v, targets[e]);
+            }
+        }
+        return digraph;
+    }
+
+    /**
+     * Adds a new vertex without edges.
+     *
+     * @return index of the new vertex
+     */
+    public int addVertex() {
+        if (vertices == begins.length) {
+            final int capacity = Math.max(MIN_CAPACITY, 2 * vertices);
+            begins = Arrays.copyOf(begins, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        begins[vertices] = slots;
+        ends[vertices] = slots;
+        return vertices++;
+    }
+
+    /**
+     * Adds the directed edge v-&gt;w. Range of v is moved to the end of edges
+     * array unless it's already there, so indexes of its edges change.
+     *
+     * @param v
+     *            the tail of the edge
+     * @param w
+     *            the head of the edge
+     */
+    public void addEdge(final int v, final int w) {
+        if (v < 0 || v >= vertices || w < 0 || w >= vertices) {
+            throw new IndexOutOfBoundsException();
+        }
+        final int degree = ends[v] - begins[v];
+        if (ends[v] == slots) {
+            if (slots == targets.length) {
+                reallocate(1);
+            }
+        } else if (slots + degree + 1 > targets.length) {
+            reallocate(degree + 1);
+        }
+        if (ends[v] != slots) {
+            System.arraycopy(targets, begins[v], targets, slots, degree);
+            begins[v] = slots;
+            slots += degree;
+        }
+        targets[slots++] = w;
+        ends[v] = slots;
+        edges++;
+    }
+
+    /**
+     * Copies all ranges without gaps into a new edges array.
+     *
+     * @param extra
+     *            number of slots which must be available after copying
+     */
+    private void reallocate(final int extra) {
+        final int[] newTargets = new int[Math.max(MIN_CAPACITY,
+                2 * (edges + extra))];
+        int e = 0;
+        for (int v = 0; v < vertices; v++) {
+            final int degree = ends[v] - begins[v];
+            System.arraycopy(targets, begins[v], newTargets, e, degree);
+            begins[v] = e;
+            e += degree;
+            ends[v] = e;
+        }
+        targets = newTargets;
+        slots = e;
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Interface for factories of SapFinder objects which precompute data from the
+ * topological order of a DAG. The caller which has already sorted the DAG
+ * (e.g. to validate it) passes the sort, so it isn't repeated.
+ *
+ * @author Sergey Esipenko
+ */
+public interface DagSapFinderFactory extends SapFinderFactory {
+    /**
+     * Creates a new SapFinder object for given DAG using its topological sort.
+     *
+     * @param dag
+     *            directed acyclic graph for SAP processing
+     * @param sort
+     *            topological sort of the DAG
+     * @return new SapFinder object
+     */
+    SapFinder create(final CompactDigraph dag, final TopologicalSort sort);
+}
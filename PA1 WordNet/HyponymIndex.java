@@ -0,0 +1,335 @@
+import java.util.Arrays;
+
+/**
+ * The HyponymIndex class answers downward queries on the hypernym digraph:
+ * descendants of synset within given depth, number of descendants and number
+ * of nouns under synset.
+ * <p>
+ * This implementation keeps the reverse digraph (hypernym to hyponym edges) in
+ * CSR form, so enumeration of descendants is a BFS over hyponyms which takes
+ * time proportional to the output. Counts are precomputed at construction
+ * time: each synset (each noun) adds one to counters of all its ancestors
+ * found by a search up, so a synset reachable by several paths is counted
+ * once and construction takes time proportional to the total number of
+ * ancestors, like AncestorIndex. Searches keep per-thread marks, so the
+ * object is thread-safe if updates aren't concurrent with queries.
+ * <p>
+ * The index follows growth of the digraph like AncestorIndex: the digraph,
+ * its reverse and the noun index are updated by the caller, then the index
+ * adds one to counters of ancestors which are newly reached. Updates take
+ * time proportional to the number of ancestors of touched synsets and nouns.
+ *
+ * @author Sergey Esipenko
+ */
+public class HyponymIndex {
+
+    /**
+     * Hypernym relations.
+     */
+    private final CompactDigraph hypernyms;
+
+    /**
+     * Hyponym relations (reverse of hypernyms).
+     */
+    private final CompactDigraph hyponyms;
+
+    /**
+     * Index of nouns and their synsets.
+     */
+    private final NounIndex nounIndex;
+
+    /**
+     * Numbers of descendants of synsets (the synset itself isn't counted); it
+     * may have spare capacity.
+     */
+    private int[] descendantCounts;
+
+    /**
+     * Numbers of distinct nouns of synsets and their descendants; it may have
+     * spare capacity.
+     */
+    private int[] nounCounts;
+
+    /**
+     * Queue of searches up made by construction and updates.
+     */
+    private int[] queue;
+
+    /**
+     * Marks of visited vertices of threads.
+     */
+    private final ThreadLocal<StampedMarks> marks;
+
+    /**
+     * Constructor takes hypernym relations and the noun index.
+     *
+     * @param digraph
+     *            digraph of hypernym relations (it must be a DAG)
+     * @param nouns
+     *            index of nouns and their synsets
+     */
+    public HyponymIndex(final CompactDigraph digraph, final NounIndex nouns) {
+        this(digraph, digraph.reverse(), nouns);
+    }
+
+    /**
+     * Constructor takes hypernym relations, their reverse and the noun index.
+     *
+     * @param digraph
+     *            digraph of hypernym relations (it must be a DAG)
+     * @param reverse
+     *            digraph of hyponym relations (it may grow together with the
+     *            digraph)
+     * @param nouns
+     *            index of nouns and their synsets
+     */
+    public HyponymIndex(final CompactDigraph digraph,
+            final CompactDigraph reverse, final NounIndex nouns) {
+        final int v = digraph.V();
+        this.hypernyms = digraph;
+        this.hyponyms = reverse;
+        this.nounIndex = nouns;
+        this.descendantCounts = new int[v];
+        this.nounCounts = new int[v];
+        this.queue = new int[v];
+        this.marks = new ThreadLocal<StampedMarks>() {
+            @Override
+            protected StampedMarks initialValue() {
+                return new StampedMarks(hyponyms.V());
+            }
+        };
+        final StampedMarks visited = marks.get();
+        for (int w = 0; w < v; w++) {
+            visited.clear();
+            final int count = searchUp(w, -1, visited, 0);
+            // the synset itself is the first visited vertex
+            for (int i = 1; i < count; i++) {
+                descendantCounts[queue[i]]++;
+            }
+        }
+        for (int p = 0; p < nouns.size(); p++) {
+            final int count = searchUpFromNoun(p, -1, -1, visited);
+            for (int i = 0; i < count; i++) {
+                nounCounts[queue[i]]++;
+            }
+        }
+    }
+
+    /**
+     * Returns number of descendants of synset.
+     *
+     * @param v
+     *            synset identifier
+     * @return number of synsets which have the synset as ancestor (the synset
+     *         itself isn't counted)
+     */
+    public final int descendantCount(final int v) {
+        return descendantCounts[v];
+    }
+
+    /**
+     * Returns number of nouns under synset.
+     *
+     * @param v
+     *            synset identifier
+     * @return number of distinct nouns of the synset and its descendants
+     */
+    public final int nounCount(final int v) {
+        return nounCounts[v];
+    }
+
+    /**
+     * Finds descendants of synset within given depth. Takes time proportional
+     * to the number of found synsets and their hyponym edges.
+     *
+     * @param v
+     *            synset identifier
+     * @param maxDepth
+     *            maximal length of path from the synset to a descendant
+     * @return identifiers of descendants in nondecreasing order of distance
+     *         (the synset itself isn't included)
+     */
+    public final int[] descendants(final int v, final int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Depth must be nonnegative");
+        }
+        final StampedMarks visited = marks.get();
+        visited.ensureCapacity(hyponyms.V());
+        visited.clear();
+        visited.mark(v);
+        // the result array serves as the queue, the synset is dropped at last
+        final int capacity = descendantCounts[v] + 1;
+        int[] result = new int[Math.min(capacity,
+                hyponyms.outdegree(v) + 1)];
+        result[0] = v;
+        int size = 1;
+        int layerBegin = 0;
+        for (int depth = 1; depth <= maxDepth && layerBegin < size;
+                depth++) {
+            final int layerEnd = size;
+            for (int i = layerBegin; i < layerEnd; i++) {
+                final int u = result[i];
+                final int end = hyponyms.end(u);
+                for (int e = hyponyms.begin(u); e < end; e++) {
+                    final int w = hyponyms.target(e);
+                    if (visited.mark(w)) {
+                        if (size == result.length) {
+                            result = Arrays.copyOf(result,
+                                    Math.min(capacity, 2 * size));
+                        }
+                        result[size++] = w;
+                    }
+                }
+            }
+            layerBegin = layerEnd;
+        }
+        return Arrays.copyOfRange(result, 1, size);
+    }
+
+    /**
+     * Updates the index after a new synset was added to the digraph, its
+     * reverse and the noun index. Each ancestor gets a new descendant, and
+     * gets each noun of the synset unless the noun was under it before.
+     *
+     * @param v
+     *            the new synset
+     * @param positions
+     *            positions of its nouns in the noun index (no duplicates)
+     */
+    public final void addVertex(final int v, final int[] positions) {
+        ensureCapacity();
+        final StampedMarks visited = marks.get();
+        visited.ensureCapacity(hypernyms.V());
+        visited.clear();
+        final int count = searchUp(v, -1, visited, 0);
+        for (int i = 1; i < count; i++) {
+            descendantCounts[queue[i]]++;
+        }
+        for (int p : positions) {
+            // ancestors of other synsets of the noun have counted it already
+            final int before = searchUpFromNoun(p, v, -1, visited);
+            final int after = searchUp(v, -1, visited, before);
+            for (int i = before; i < after; i++) {
+                nounCounts[queue[i]]++;
+            }
+        }
+    }
+
+    /**
+     * Updates the index after edge (from, to) was added to the digraph and
+     * its reverse. Ancestors of the head which weren't reached by an affected
+     * synset (noun) before get it as a new descendant (noun). The new edge
+     * must be the last edge of the tail, like CompactDigraph.addEdge() leaves
+     * it, so searches skip it to find ancestors before the update.
+     *
+     * @param from
+     *            tail of the new edge
+     * @param to
+     *            head of the new edge
+     * @param affected
+     *            the tail and all synsets it is reachable from
+     * @param positions
+     *            positions of nouns of affected synsets in the noun index (no
+     *            duplicates)
+     */
+    public final void addEdge(final int from, final int to,
+            final int[] affected, final int[] positions) {
+        final StampedMarks visited = marks.get();
+        visited.ensureCapacity(hypernyms.V());
+        for (int v : affected) {
+            visited.clear();
+            final int before = searchUp(v, from, visited, 0);
+            final int after = searchUp(to, -1, visited, before);
+            for (int i = before; i < after; i++) {
+                descendantCounts[queue[i]]++;
+            }
+        }
+        for (int p : positions) {
+            final int before = searchUpFromNoun(p, -1, from, visited);
+            final int after = searchUp(to, -1, visited, before);
+            for (int i = before; i < after; i++) {
+                nounCounts[queue[i]]++;
+            }
+        }
+    }
+
+    /**
+     * Enlarges arrays of the index to the number of synsets.
+     */
+    private void ensureCapacity() {
+        final int v = hypernyms.V();
+        if (descendantCounts.length < v) {
+            final int capacity = Math.max(v, 2 * descendantCounts.length);
+            descendantCounts = Arrays.copyOf(descendantCounts, capacity);
+            nounCounts = Arrays.copyOf(nounCounts, capacity);
+            queue = new int[capacity];
+        }
+    }
+
+    /**
+     * Finds all ancestors of synsets of the noun including them.
+     *
+     * @param p
+     *            position of the noun in the noun index
+     * @param excluded
+     *            synset which isn't a source; -1 if all synsets are sources
+     * @param skipped
+     *            vertex whose last edge isn't followed; -1 if all edges are
+     *            followed
+     * @param visited
+     *            marks of visited vertices (they are cleared)
+     * @return number of found vertices
+     */
+    private int searchUpFromNoun(final int p, final int excluded,
+            final int skipped, final StampedMarks visited) {
+        visited.clear();
+        final int[] ids = nounIndex.ids();
+        int size = 0;
+        for (int i = nounIndex.begin(p); i < nounIndex.end(p); i++) {
+            if (ids[i] != excluded) {
+                size = searchUp(ids[i], skipped, visited, size);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Finds ancestors of the vertex including it which aren't visited yet.
+     * The found vertices are added to the queue after the visited ones; since
+     * ancestors of visited vertices are visited too, only new vertices are
+     * expanded.
+     *
+     * @param source
+     *            the vertex
+     * @param skipped
+     *            vertex whose last edge isn't followed; -1 if all edges are
+     *            followed
+     * @param visited
+     *            marks of visited vertices
+     * @param visitedCount
+     *            number of visited vertices in the queue
+     * @return number of visited vertices in the queue after the search
+     */
+    private int searchUp(final int source, final int skipped,
+            final StampedMarks visited, final int visitedCount) {
+        if (!visited.mark(source)) {
+            return visitedCount;
+        }
+        int size = visitedCount;
+        queue[size++] = source;
+        for (int head = visitedCount; head < size; head++) {
+            final int u = queue[head];
+            int end = hypernyms.end(u);
+            if (u == skipped) {
+                end--;
+            }
+            for (int e = hypernyms.begin(u); e < end; e++) {
+                final int w = hypernyms.target(e);
+                if (visited.mark(w)) {
+                    queue[size++] = w;
+                }
+            }
+        }
+        return size;
+    }
+}
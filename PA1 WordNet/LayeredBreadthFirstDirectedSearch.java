@@ -8,6 +8,14 @@ import java.util.Arrays;
  * This implementation relies on the LayeredIntegerQueue queue implementation.
  * <p>
  * This implementation uses an integer array for marks to provide fast clearing.
+ * The graph is stored in CSR format, so edge relaxation doesn't box vertices.
+ * If the graph grows, arrays are enlarged at the next preparation.
+ * <p>
+ * Layers may be processed either by nextLayer(), which calls the handler for
+ * each vertex, or by beginLayer() which exposes the layer as a range of
+ * visited positions: the caller runs its own loop over the range and calls
+ * expand() for each vertex. The second way has no virtual calls, so the JIT
+ * can inline the whole traversal into the caller.
  *
  * @author Sergey Esipenko
  */
@@ -26,22 +34,42 @@ public class LayeredBreadthFirstDirectedSearch {
     /**
      * Graph for searching.
      */
-    private final Digraph graph;
+    private final CompactDigraph graph;
 
     /**
      * Special queue structure which supports layering.
      */
-    private final LayeredIntegerQueue layeredQueue;
+    private LayeredIntegerQueue layeredQueue;
 
     /**
      * Array of marks.
      */
-    private final int[] marks;
+    private int[] marks;
 
     /**
      * Array of dists.
      */
-    private final int[] dists;
+    private int[] dists;
+
+    /**
+     * Beginning of the layer started by beginLayer().
+     */
+    private int layerBegin;
+
+    /**
+     * End of the layer started by beginLayer().
+     */
+    private int layerEnd;
+
+    /**
+     * Number of layers expanded since the last preparation.
+     */
+    private int layersExpanded;
+
+    /**
+     * Number of edges relaxed since the last preparation.
+     */
+    private int edgesRelaxed;
 
     /**
      * Current marked value.
@@ -59,7 +87,8 @@ public class LayeredBreadthFirstDirectedSearch {
      * @param directedGraph
      *            graph for searching
      */
-    public LayeredBreadthFirstDirectedSearch(final Digraph directedGraph) {
+    public LayeredBreadthFirstDirectedSearch(
+            final CompactDigraph directedGraph) {
         this.graph = directedGraph;
         this.layeredQueue = new LayeredIntegerQueue(graph.V());
         this.marks = new int[graph.V()];
@@ -73,8 +102,11 @@ public class LayeredBreadthFirstDirectedSearch {
      *            source for BFS
      */
     public final void prepare(final int source) {
+        ensureCapacity();
         clearMarks();
         layeredQueue.clear();
+        layersExpanded = 0;
+        edgesRelaxed = 0;
         enqueue(source, 0);
     }
 
@@ -85,10 +117,40 @@ public class LayeredBreadthFirstDirectedSearch {
      *            sources for BFS
      */
     public final void prepare(final Iterable<Integer> sources) {
+        ensureCapacity();
         clearMarks();
         layeredQueue.clear();
+        layersExpanded = 0;
+        edgesRelaxed = 0;
         for (int v : sources) {
-            enqueue(v, 0);
+            if (marks[v] != marked) {
+                enqueue(v, 0);
+            }
+        }
+    }
+
+    /**
+     * Prepare this object to search from sources stored in range of array.
+     *
+     * @param sources
+     *            array with sources for BFS
+     * @param from
+     *            beginning of range (inclusive)
+     * @param to
+     *            end of range (exclusive)
+     */
+    public final void prepare(final int[] sources, final int from,
+            final int to) {
+        ensureCapacity();
+        clearMarks();
+        layeredQueue.clear();
+        layersExpanded = 0;
+        edgesRelaxed = 0;
+        for (int i = from; i < to; i++) {
+            final int v = sources[i];
+            if (marks[v] != marked) {
+                enqueue(v, 0);
+            }
         }
     }
 
@@ -107,10 +169,61 @@ public class LayeredBreadthFirstDirectedSearch {
     public final void nextLayer() {
         if (hasNextLayer()) {
             layeredQueue.nextLayer();
+            layersExpanded++;
             runBfsOnCurrentLayer();
         }
     }
 
+    /**
+     * Switches to the next layer without processing it. Vertices of the layer
+     * are visited(layerBegin()) ... visited(layerEnd() - 1), the caller must
+     * expand() each of them. The handler isn't called.
+     */
+    public final void beginLayer() {
+        layeredQueue.nextLayer();
+        layersExpanded++;
+        layerBegin = layeredQueue.layerBegin();
+        layerEnd = layeredQueue.layerEnd();
+        layeredQueue.skipLayer();
+    }
+
+    /**
+     * Returns beginning of the layer started by beginLayer().
+     *
+     * @return position of the first vertex of the layer (inclusive)
+     */
+    public final int layerBegin() {
+        return layerBegin;
+    }
+
+    /**
+     * Returns end of the layer started by beginLayer().
+     *
+     * @return position after the last vertex of the layer (exclusive)
+     */
+    public final int layerEnd() {
+        return layerEnd;
+    }
+
+    /**
+     * Adds unvisited heads of edges outgoing from v to the next layer.
+     *
+     * @param v
+     *            vertex of the current layer
+     */
+    public final void expand(final int v) {
+        final int next = dists[v] + 1;
+        final int begin = graph.begin(v);
+        final int end = graph.end(v);
+        edgesRelaxed += end - begin;
+        for (int e = begin; e < end; e++) {
+            final int nv = graph.target(e);
+            if (marks[nv] != marked) {
+                enqueue(nv, next);
+            }
+        }
+    }
+
     /**
      * Is there a directed path from the source <tt>s</tt> (or sources) to
      * vertex <tt>v</tt>?
@@ -136,6 +249,57 @@ public class LayeredBreadthFirstDirectedSearch {
         return dists[v];
     }
 
+    /**
+     * Returns number of vertices visited (enqueued) since the last
+     * preparation.
+     *
+     * @return number of visited vertices
+     */
+    public final int visitedCount() {
+        return layeredQueue.pushed();
+    }
+
+    /**
+     * Returns number of layers expanded since the last preparation.
+     *
+     * @return number of expanded layers
+     */
+    public final int layersExpanded() {
+        return layersExpanded;
+    }
+
+    /**
+     * Returns number of edges relaxed since the last preparation.
+     *
+     * @return number of relaxed edges
+     */
+    public final int edgesRelaxed() {
+        return edgesRelaxed;
+    }
+
+    /**
+     * Returns vertex visited at given position in BFS order.
+     *
+     * @param i
+     *            position in BFS order (less than visitedCount())
+     * @return visited vertex
+     */
+    public final int visited(final int i) {
+        return layeredQueue.get(i);
+    }
+
+    /**
+     * Enlarges arrays if the graph has grown.
+     */
+    private void ensureCapacity() {
+        if (marks.length < graph.V()) {
+            final int capacity = Math.max(graph.V(), 2 * marks.length);
+            layeredQueue = new LayeredIntegerQueue(capacity);
+            marks = Arrays.copyOf(marks, capacity);
+            dists = Arrays.copyOf(dists, capacity);
+        }
+    }
+
     /**
      * Clears all marks.
      */
@@ -173,11 +337,7 @@ public class LayeredBreadthFirstDirectedSearch {
             if (vertexProcessingHandler != null) {
                 vertexProcessingHandler.onVertexVisited(v);
             }
-            for (int nv : graph.adj(v)) {
-                if (marks[nv] != marked) {
-                    enqueue(nv, dists[v] + 1);
-                }
-            }
+            expand(v);
         }
     }
 
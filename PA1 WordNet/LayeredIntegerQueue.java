@@ -66,6 +66,52 @@ public class LayeredIntegerQueue {
         return queue[head++];
     }
 
+    /**
+     * Returns number of elements pushed since the last clearing.
+     *
+     * @return number of pushed elements
+     */
+    public final int pushed() {
+        return tail;
+    }
+
+    /**
+     * Returns element pushed at given position since the last clearing.
+     *
+     * @param i
+     *            position of element (0 for the first pushed element)
+     * @return the element
+     */
+    public final int get(final int i) {
+        return queue[i];
+    }
+
+    /**
+     * Returns position of the first unprocessed element of the current layer.
+     *
+     * @return beginning of the current layer (inclusive)
+     */
+    public final int layerBegin() {
+        return head;
+    }
+
+    /**
+     * Returns position after the last element of the current layer.
+     *
+     * @return end of the current layer (exclusive)
+     */
+    public final int layerEnd() {
+        return layerEnd;
+    }
+
+    /**
+     * Marks all elements of the current layer as removed. They are still
+     * available by get().
+     */
+    public final void skipLayer() {
+        head = layerEnd;
+    }
+
     /**
      * Is the current layer empty?
      *
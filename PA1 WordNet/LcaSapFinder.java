@@ -0,0 +1,456 @@
+import java.util.Arrays;
+
+/**
+ * LCA-based helper class for the SAP data type. It works for DAGs only and is
+ * intended for nearly tree-like digraphs such as WordNet.
+ * <p>
+ * The DAG is split into a spanning forest (the only hypernym of each vertex
+ * with one outgoing edge) and extra edges (all edges of vertices with several
+ * hypernyms). Vertices whose whole ancestor chain has no extra edges form the
+ * tree part: ancestors of such a vertex are exactly its forest path to the
+ * root, so SAP of two tree part vertices is their lowest common ancestor. LCA
+ * queries are answered in constant time by the Euler tour of the tree part
+ * and the sparse table of minimum depths on it. Queries touching other
+ * vertices fall back to TwoWaySapFinder (one object per thread).
+ * <p>
+ * Growth of the DAG only shrinks the tree part: new vertices are left out of
+ * it, and a new edge takes out its tail and the vertices it is reachable
+ * from. Ancestors of the remaining tree part vertices don't change, so the
+ * Euler tour stays valid for them and updates take time proportional to the
+ * number of affected vertices. The object is thread-safe if updates aren't
+ * concurrent with queries.
+ *
+ * @author Sergey Esipenko
+ */
+public class LcaSapFinder extends AbstractSapFinder {
+
+    /**
+     * Factory of LcaSapFinder objects.
+     */
+    public static final DagSapFinderFactory FACTORY =
+            new DagSapFinderFactory() {
+        @Override
+        public SapFinder create(final CompactDigraph digraph) {
+            return new LcaSapFinder(digraph);
+        }
+
+        @Override
+        public SapFinder create(final CompactDigraph dag,
+                final TopologicalSort sort) {
+            return new LcaSapFinder(dag, sort);
+        }
+
+        @Override
+        public boolean supportsGrowth() {
+            return true;
+        }
+    };
+
+    /**
+     * Marks vertices out of the tree part in firstVisits array.
+     */
+    private static final int NOT_IN_TREE = -1;
+
+    /**
+     * Finder for queries touching vertices out of the tree part.
+     */
+    private final SapFinder fallback;
+
+    /**
+     * Depths of tree part vertices (distances to their roots).
+     */
+    private final int[] depths;
+
+    /**
+     * Roots of tree part vertices.
+     */
+    private final int[] roots;
+
+    /**
+     * Positions of the first visit of each vertex in the Euler tour;
+     * NOT_IN_TREE for vertices out of the tree part (it may have spare
+     * capacity).
+     */
+    private int[] firstVisits;
+
+    /**
+     * Sparse table: level k keeps the vertex of minimum depth in each Euler
+     * tour interval of length 2^k.
+     */
+    private final int[][] sparseTable;
+
+    /**
+     * Number of vertices in the tree part.
+     */
+    private int treeSize;
+
+    /**
+     * Constructor takes DAG. Throws IllegalArgumentException if digraph has a
+     * cycle.
+     *
+     * @param dag
+     *            directed acyclic graph for SAP processing
+     */
+    public LcaSapFinder(final CompactDigraph dag) {
+        this(dag, new TopologicalSort(dag));
+    }
+
+    /**
+     * Constructor takes DAG and its topological sort. Throws
+     * IllegalArgumentException if digraph has a cycle.
+     *
+     * @param dag
+     *            directed acyclic graph for SAP processing
+     * @param sort
+     *            topological sort of the digraph
+     */
+    public LcaSapFinder(final CompactDigraph dag, final TopologicalSort sort) {
+        super(dag);
+        final int[] order = sort.order();
+        Utils.check(order != null, new IllegalArgumentException(
+                "Given graph isn't DAG"));
+        this.fallback = new ThreadLocalSapFinder(dag, TwoWaySapFinder.FACTORY);
+        this.depths = new int[dag.V()];
+        this.roots = new int[dag.V()];
+        this.firstVisits = new int[dag.V()];
+        this.treeSize = markTreePart(dag, order);
+        this.sparseTable = buildSparseTable(eulerTour(dag));
+    }
+
+    /**
+     * Returns number of vertices in the tree part.
+     *
+     * @return number of vertices answered by LCA queries
+     */
+    public final int getTreeSize() {
+        return treeSize;
+    }
+
+    /**
+     * Checks whether vertex belongs to the tree part.
+     *
+     * @param v
+     *            the vertex
+     * @return true if queries for the vertex are answered by LCA
+     */
+    public final boolean isTreeVertex(final int v) {
+        return firstVisits[v] != NOT_IN_TREE;
+    }
+
+    @Override
+    public final boolean supportsGrowth() {
+        return true;
+    }
+
+    @Override
+    public final void vertexAdded(final int v) {
+        if (v >= firstVisits.length) {
+            final int length = firstVisits.length;
+            firstVisits = Arrays.copyOf(firstVisits,
+                    Math.max(v + 1, 2 * length));
+            Arrays.fill(firstVisits, length, firstVisits.length,
+                    NOT_IN_TREE);
+        }
+        fallback.vertexAdded(v);
+    }
+
+    @Override
+    public final void edgeAdded(final int from, final int to,
+            final int[] affected) {
+        for (int v : affected) {
+            if (firstVisits[v] != NOT_IN_TREE) {
+                firstVisits[v] = NOT_IN_TREE;
+                treeSize--;
+            }
+        }
+        fallback.edgeAdded(from, to, affected);
+    }
+
+    @Override
+    public final long packedSap(final int first, final int second) {
+        if (firstVisits[first] == NOT_IN_TREE
+                || firstVisits[second] == NOT_IN_TREE) {
+            return fallback.packedSap(first, second);
+        }
+        return treePackedSap(first, second);
+    }
+
+    @Override
+    public final long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second) {
+        if (!inTree(first) || !inTree(second)) {
+            return fallback.packedSap(first, second);
+        }
+        long best = SapAnswer.NO_ANSWER;
+        for (int v : first) {
+            for (int w : second) {
+                best = better(best, treePackedSap(v, w));
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo) {
+        if (!inTree(first, firstFrom, firstTo)
+                || !inTree(second, secondFrom, secondTo)) {
+            return fallback.packedSap(first, firstFrom, firstTo, second,
+                    secondFrom, secondTo);
+        }
+        long best = SapAnswer.NO_ANSWER;
+        for (int i = firstFrom; i < firstTo; i++) {
+            for (int j = secondFrom; j < secondTo; j++) {
+                best = better(best, treePackedSap(first[i], second[j]));
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public final long packedSap(final int first, final int second,
+            final int maxLength) {
+        if (firstVisits[first] == NOT_IN_TREE
+                || firstVisits[second] == NOT_IN_TREE) {
+            return fallback.packedSap(first, second, maxLength);
+        }
+        return SapAnswer.bound(treePackedSap(first, second), maxLength);
+    }
+
+    @Override
+    public final long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second, final int maxLength) {
+        if (!inTree(first) || !inTree(second)) {
+            return fallback.packedSap(first, second, maxLength);
+        }
+        return SapAnswer.bound(packedSap(first, second), maxLength);
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo, final int maxLength) {
+        if (!inTree(first, firstFrom, firstTo)
+                || !inTree(second, secondFrom, secondTo)) {
+            return fallback.packedSap(first, firstFrom, firstTo, second,
+                    secondFrom, secondTo, maxLength);
+        }
+        return SapAnswer.bound(packedSap(first, firstFrom, firstTo, second,
+                secondFrom, secondTo), maxLength);
+    }
+
+    /**
+     * Performs a SAP query for two tree part vertices.
+     *
+     * @param v
+     *            first vertex
+     * @param w
+     *            second vertex
+     * @return answer for the query packed by SapAnswer.pack()
+     */
+    private long treePackedSap(final int v, final int w) {
+        if (roots[v] != roots[w]) {
+            return SapAnswer.NO_ANSWER;
+        }
+        final int ancestor = lca(v, w);
+        return SapAnswer.pack(
+                depths[v] + depths[w] - 2 * depths[ancestor], ancestor);
+    }
+
+    /**
+     * Finds the lowest common ancestor of two vertices of the same tree.
+     *
+     * @param v
+     *            first vertex
+     * @param w
+     *            second vertex
+     * @return the lowest common ancestor
+     */
+    private int lca(final int v, final int w) {
+        final int from = Math.min(firstVisits[v], firstVisits[w]);
+        final int to = Math.max(firstVisits[v], firstVisits[w]);
+        final int level = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        final int a = sparseTable[level][from];
+        final int b = sparseTable[level][to - (1 << level) + 1];
+        if (depths[a] <= depths[b]) {
+            return a;
+        }
+        return b;
+    }
+
+    /**
+     * Chooses the best of two packed answers.
+     *
+     * @param best
+     *            current best answer
+     * @param packed
+     *            candidate answer
+     * @return the answer with the least length
+     */
+    private static long better(final long best, final long packed) {
+        if (packed != SapAnswer.NO_ANSWER
+                && (best == SapAnswer.NO_ANSWER || SapAnswer
+                        .unpackLength(best) > SapAnswer.unpackLength(packed))) {
+            return packed;
+        }
+        return best;
+    }
+
+    /**
+     * Checks whether all vertices of the set belong to the tree part.
+     *
+     * @param vertices
+     *            set of vertices
+     * @return true if all vertices belong to the tree part
+     */
+    private boolean inTree(final Iterable<Integer> vertices) {
+        for (int v : vertices) {
+            if (firstVisits[v] == NOT_IN_TREE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether all vertices of the range belong to the tree part.
+     *
+     * @param vertices
+     *            array of vertices
+     * @param from
+     *            beginning of range (inclusive)
+     * @param to
+     *            end of range (exclusive)
+     * @return true if all vertices belong to the tree part
+     */
+    private boolean inTree(final int[] vertices, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (firstVisits[vertices[i]] == NOT_IN_TREE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the tree part and fills depths and roots of its vertices.
+     * Vertices are processed from the roots to the leaves. Tree part vertices
+     * get 0 in firstVisits array until the Euler tour is built.
+     *
+     * @param dag
+     *            directed acyclic graph
+     * @param order
+     *            topological order of vertices (leaves first)
+     * @return number of vertices in the tree part
+     */
+    private int markTreePart(final CompactDigraph dag, final int[] order) {
+        int count = 0;
+        for (int k = order.length - 1; k >= 0; k--) {
+            final int v = order[k];
+            firstVisits[v] = NOT_IN_TREE;
+            if (dag.outdegree(v) == 0) {
+                roots[v] = v;
+            } else {
+                final int parent = dag.target(dag.begin(v));
+                if (dag.outdegree(v) > 1
+                        || firstVisits[parent] == NOT_IN_TREE) {
+                    continue;
+                }
+                depths[v] = depths[parent] + 1;
+                roots[v] = roots[parent];
+            }
+            firstVisits[v] = 0;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Builds the Euler tour of the tree part and fills positions of the first
+     * visits. Traversal is iterative, so deep trees are supported.
+     *
+     * @param dag
+     *            directed acyclic graph
+     * @return vertices in the order of the Euler tour
+     */
+    private int[] eulerTour(final CompactDigraph dag) {
+        final int v = dag.V();
+        final int[] childOffsets = new int[v + 1];
+        for (int w = 0; w < v; w++) {
+            if (firstVisits[w] != NOT_IN_TREE && dag.outdegree(w) == 1) {
+                childOffsets[dag.target(dag.begin(w)) + 1]++;
+            }
+        }
+        for (int w = 0; w < v; w++) {
+            childOffsets[w + 1] += childOffsets[w];
+        }
+        final int[] children = new int[childOffsets[v]];
+        final int[] filled = new int[v];
+        for (int w = 0; w < v; w++) {
+            if (firstVisits[w] != NOT_IN_TREE && dag.outdegree(w) == 1) {
+                final int parent = dag.target(dag.begin(w));
+                children[childOffsets[parent] + filled[parent]++] = w;
+            }
+        }
+        final int[] tour = new int[Math.max(0, 2 * treeSize - 1)];
+        final int[] stack = new int[treeSize];
+        final int[] nextChild = filled;
+        int size = 0;
+        for (int root = 0; root < v; root++) {
+            if (firstVisits[root] == NOT_IN_TREE || dag.outdegree(root) != 0) {
+                continue;
+            }
+            int top = 0;
+            stack[0] = root;
+            nextChild[root] = childOffsets[root];
+            firstVisits[root] = size;
+            tour[size++] = root;
+            while (top >= 0) {
+                final int w = stack[top];
+                if (nextChild[w] < childOffsets[w + 1]) {
+                    final int child = children[nextChild[w]++];
+                    nextChild[child] = childOffsets[child];
+                    stack[++top] = child;
+                    firstVisits[child] = size;
+                    tour[size++] = child;
+                } else if (--top >= 0) {
+                    tour[size++] = stack[top];
+                }
+            }
+        }
+        return Arrays.copyOf(tour, size);
+    }
+
+    /**
+     * Builds the sparse table of minimum depths on the Euler tour.
+     *
+     * @param tour
+     *            vertices in the order of the Euler tour
+     * @return levels of the sparse table
+     */
+    private int[][] buildSparseTable(final int[] tour) {
+        if (tour.length == 0) {
+            return new int[0][];
+        }
+        final int levels = 32 - Integer.numberOfLeadingZeros(tour.length);
+        final int[][] table = new int[levels][];
+        table[0] = tour;
+        for (int k = 1; k < levels; k++) {
+            final int half = 1 << (k - 1);
+            final int[] previous = table[k - 1];
+            final int[] level = new int[tour.length - (1 << k) + 1];
+            for (int i = 0; i < level.length; i++) {
+                final int a = previous[i];
+                final int b = previous[i + half];
+                if (depths[a] <= depths[b]) {
+                    level[i] = a;
+                } else {
+                    level[i] = b;
+                }
+            }
+            table[k] = level;
+        }
+        return table;
+    }
+}
@@ -0,0 +1,415 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The MappedDigraph class is a read-only digraph in CSR format stored in a
+ * memory-mapped file, so graphs larger than the Java heap may be queried and
+ * the garbage collector never scans them. Pages are loaded by the operating
+ * system on demand.
+ * <p>
+ * The file is a sequence of big-endian int values: magic, version, number of
+ * vertices V, number of edges E, V + 1 edge offsets and E edge targets. Edges
+ * of vertex v are target(begin(v)) ... target(end(v) - 1), like in
+ * CompactDigraph. Offsets and targets are mapped separately, each of them
+ * must fit into 2 GB. Reads use absolute positions, so the object is
+ * thread-safe.
+ *
+ * @author Sergey Esipenko
+ */
+public class MappedDigraph {
+
+    /**
+     * Magic number of graph files ("WNDG").
+     */
+    private static final int MAGIC = 0x574E4447;
+
+    /**
+     * Version of graph file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the header in bytes.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Size of input buffer.
+     */
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of vertices.
+     */
+    private final int vertices;
+
+    /**
+     * Number of edges.
+     */
+    private final int edges;
+
+    /**
+     * Edge offsets: edges of v are in range from offsets.get(v) (inclusive) to
+     * offsets.get(v + 1) (exclusive).
+     */
+    private final IntBuffer offsets;
+
+    /**
+     * Heads of all edges.
+     */
+    private final IntBuffer targets;
+
+    /**
+     * Constructor maps graph file written by write() or convert().
+     *
+     * @param fileName
+     *            name of graph file
+     */
+    public MappedDigraph(final String fileName) {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+                FileChannel channel = file.getChannel()) {
+            final IntBuffer header = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .asIntBuffer();
+            if (header.get(0) != MAGIC || header.get(1) != VERSION) {
+                throw new IllegalArgumentException(fileName
+                        + " isn't a graph file");
+            }
+            vertices = header.get(2);
+            edges = header.get(3);
+            offsets = map(channel, FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE, vertices + 1L);
+            targets = map(channel, FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + 4L * (vertices + 1), edges);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Could not read " + fileName,
+                    ex);
+        }
+    }
+
+    /**
+     * Returns number of vertices.
+     *
+     * @return number of vertices
+     */
+    public final int V() {
+        return vertices;
+    }
+
+    /**
+     * Returns number of edges.
+     *
+     * @return number of edges
+     */
+    public final int E() {
+        return edges;
+    }
+
+    /**
+     * Returns index of the first edge of vertex.
+     *
+     * @param v
+     *            the vertex
+     * @return beginning of the range of edges (inclusive)
+     */
+    public final int begin(final int v) {
+        return offsets.get(v);
+    }
+
+    /**
+     * Returns index after the last edge of vertex.
+     *
+     * @param v
+     *            the vertex
+     * @return end of the range of edges (exclusive)
+     */
+    public final int end(final int v) {
+        return offsets.get(v + 1);
+    }
+
+    /**
+     * Returns head of edge.
+     *
+     * @param e
+     *            index of the edge
+     * @return the vertex which edge points to
+     */
+    public final int target(final int e) {
+        return targets.get(e);
+    }
+
+    /**
+     * Returns out-degree of vertex.
+     *
+     * @param v
+     *            the vertex
+     * @return out-degree of the vertex
+     */
+    public final int outdegree(final int v) {
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+
+    /**
+     * Writes digraph into graph file.
+     *
+     * @param fileName
+     *            name of graph file
+     * @param digraph
+     *            digraph to write
+     */
+    public static void write(final String fileName,
+            final CompactDigraph digraph) {
+        final GraphFile file = new GraphFile(fileName, digraph.V(),
+                digraph.E());
+        try {
+            int offset = 0;
+            for (int v = 0; v < digraph.V(); v++) {
+                file.offsets.put(v, offset);
+                for (int e = digraph.begin(v); e < digraph.end(v); e++) {
+                    file.targets.put(offset++, digraph.target(e));
+                }
+            }
+            file.offsets.put(digraph.V(), offset);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Converts hypernyms file (lines of comma-separated synset identifiers:
+     * hyponym followed by its hypernyms) into graph file. Neither the text
+     * nor the graph is kept in the heap: the text is read three times and
+     * the graph is built in the mapped output file. Number of vertices is
+     * the maximal identifier met in edges plus one.
+     *
+     * @param hypernymsFile
+     *            name of hypernyms file
+     * @param fileName
+     *            name of graph file
+     */
+    public static void convert(final String hypernymsFile,
+            final String fileName) {
+        // first pass: sizes
+        final int[] sizes = new int[2];
+        scan(hypernymsFile, new EdgeVisitor() {
+            @Override
+            public void visit(final int hyponym, final int hypernym) {
+                sizes[0] = Math.max(sizes[0],
+                        Math.max(hyponym, hypernym) + 1);
+                if (++sizes[1] < 0) {
+                    throw new IllegalArgumentException("Too many edges");
+                }
+            }
+        });
+        final int vertices = sizes[0];
+        final GraphFile file = new GraphFile(fileName, vertices, sizes[1]);
+        try {
+            final IntBuffer offsets = file.offsets;
+            final IntBuffer targets = file.targets;
+            // second pass: out-degrees, then prefix sums give beginnings
+            scan(hypernymsFile, new EdgeVisitor() {
+                @Override
+                public void visit(final int hyponym, final int hypernym) {
+                    offsets.put(hyponym + 1, offsets.get(hyponym + 1) + 1);
+                }
+            });
+            for (int v = 0; v < vertices; v++) {
+                offsets.put(v + 1, offsets.get(v + 1) + offsets.get(v));
+            }
+            // third pass: beginnings serve as cursors and become ends of ranges
+            scan(hypernymsFile, new EdgeVisitor() {
+                @Override
+                public void visit(final int hyponym, final int hypernym) {
+                    final int cursor = offsets.get(hyponym);
+                    targets.put(cursor, hypernym);
+                    offsets.put(hyponym, cursor + 1);
+                }
+            });
+            for (int v = vertices; v > 0; v--) {
+                offsets.put(v, offsets.get(v - 1));
+            }
+            offsets.put(0, 0);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Converts hypernyms file into graph file.
+     *
+     * @param args
+     *            command line arguments (hypernyms file, graph file)
+     */
+    public static void main(final String[] args) {
+        final long start = System.nanoTime();
+        convert(args[0], args[1]);
+        final MappedDigraph digraph = new MappedDigraph(args[1]);
+        StdOut.printf("vertices = %d, edges = %d, time = %.1f ms\n",
+                digraph.V(), digraph.E(), (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Maps range of int values of the file.
+     *
+     * @param channel
+     *            channel of the file
+     * @param mode
+     *            mapping mode
+     * @param position
+     *            position of the range in bytes
+     * @param count
+     *            number of int values
+     * @return mapped int buffer
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static IntBuffer map(final FileChannel channel,
+            final FileChannel.MapMode mode, final long position,
+            final long count) throws IOException {
+        Utils.check(4 * count <= Integer.MAX_VALUE,
+                new IllegalArgumentException("Graph is too large to map"));
+        return channel.map(mode, position, 4 * count).asIntBuffer();
+    }
+
+    /**
+     * Reads all edges of hypernyms file. The file is read by blocks into one
+     * array, a number split between blocks is continued in the next one.
+     *
+     * @param hypernymsFile
+     *            name of hypernyms file
+     * @param visitor
+     *            visitor of edges
+     */
+    private static void scan(final String hypernymsFile,
+            final EdgeVisitor visitor) {
+        try (InputStream in = new FileInputStream(hypernymsFile)) {
+            final byte[] block = new byte[INPUT_BUFFER_SIZE];
+            int hyponym = -1;
+            long value = -1;
+            int size;
+            while ((size = in.read(block)) != -1) {
+                for (int i = 0; i < size; i++) {
+                    final int b = block[i];
+                    if (b >= '0' && b <= '9') {
+                        value = Math.max(value, 0) * 10 + b - '0';
+                        if (value > Integer.MAX_VALUE) {
+                            throw new IllegalArgumentException(
+                                    "Number is too large");
+                        }
+                        continue;
+                    }
+                    if (value != -1) {
+                        if (hyponym == -1) {
+                            hyponym = (int) value;
+                        } else {
+                            visitor.visit(hyponym, (int) value);
+                        }
+                        value = -1;
+                    }
+                    if (b == '\n') {
+                        hyponym = -1;
+                    } else if (b != ',' && b != '\r') {
+                        throw new IllegalArgumentException(
+                                "Graph description is incorrect");
+                    }
+                }
+            }
+            // the last line may have no line break
+            if (value != -1 && hyponym != -1) {
+                visitor.visit(hyponym, (int) value);
+            }
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Could not read "
+                    + hypernymsFile, ex);
+        }
+    }
+
+    /**
+     * Visitor of edges read from hypernyms file.
+     *
+     * @author Sergey Esipenko
+     */
+    private interface EdgeVisitor {
+
+        /**
+         * Visits edge.
+         *
+         * @param hyponym
+         *            tail of the edge
+         * @param hypernym
+         *            head of the edge
+         */
+        void visit(final int hyponym, final int hypernym);
+    }
+
+    /**
+     * Graph file mapped for writing.
+     *
+     * @author Sergey Esipenko
+     */
+    private static final class GraphFile {
+
+        /**
+         * The file.
+         */
+        private final RandomAccessFile file;
+
+        /**
+         * Mapped edge offsets.
+         */
+        private final IntBuffer offsets;
+
+        /**
+         * Mapped edge targets.
+         */
+        private final IntBuffer targets;
+
+        /**
+         * Constructor creates graph file with header and zero arrays.
+         *
+         * @param fileName
+         *            name of graph file
+         * @param vertices
+         *            number of vertices
+         * @param edges
+         *            number of edges
+         */
+        GraphFile(final String fileName, final int vertices,
+                final int edges) {
+            try {
+                file = new RandomAccessFile(fileName, "rw");
+                file.setLength(0);
+                file.setLength(HEADER_SIZE + 4L * (vertices + 1)
+                        + 4L * edges);
+                file.writeInt(MAGIC);
+                file.writeInt(VERSION);
+                file.writeInt(vertices);
+                file.writeInt(edges);
+                final FileChannel channel = file.getChannel();
+                offsets = map(channel, FileChannel.MapMode.READ_WRITE,
+                        HEADER_SIZE, vertices + 1L);
+                targets = map(channel, FileChannel.MapMode.READ_WRITE,
+                        HEADER_SIZE + 4L * (vertices + 1), edges);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Could not write "
+                        + fileName, ex);
+            }
+        }
+
+        /**
+         * Closes the file. Mapped content is written by the operating system.
+         */
+        void close() {
+            try {
+                file.close();
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Could not close file",
+                        ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * The MultiSourceSap class computes shortest ancestral paths between one
+ * vertex set and many other vertex sets.
+ * <p>
+ * This implementation runs one BFS from the common set, then processes other
+ * sets in chunks of 64 by a bit-parallel multi-source BFS (MS-BFS): bit k of
+ * a long word stands for set k of the chunk, so one traversal serves the
+ * whole chunk and vertices shared by several searches are processed once per
+ * layer. When a vertex reached by some searches is an ancestor of the common
+ * set, answers of these searches are updated. A search leaves the traversal
+ * as soon as its answer can't be improved. Chunks are processed in parallel,
+ * each thread keeps its own scratch arrays, so the object is thread-safe if
+ * the digraph doesn't grow concurrently.
+ *
+ * @author Sergey Esipenko
+ */
+public class MultiSourceSap {
+
+    /**
+     * Number of searches in one chunk (bits in a long word).
+     */
+    private static final int CHUNK = Long.SIZE;
+
+    /**
+     * Number of chunks processed by one parallel task.
+     */
+    private static final int CHUNKS_GRAIN = 2;
+
+    /**
+     * Digraph where searches are performed.
+     */
+    private final CompactDigraph digraph;
+
+    /**
+     * Scratch arrays of threads.
+     */
+    private final ThreadLocal<Scratch> scratches;
+
+    /**
+     * Constructor takes digraph.
+     *
+     * @param directedGraph
+     *            digraph for SAP processing
+     */
+    public MultiSourceSap(final CompactDigraph directedGraph) {
+        this.digraph = directedGraph;
+        this.scratches = new ThreadLocal<Scratch>() {
+            @Override
+            protected Scratch initialValue() {
+                return new Scratch(digraph);
+            }
+        };
+    }
+
+    /**
+     * Finds shortest ancestral paths between the common set and each of other
+     * sets. The common set is source[sourceFrom] ... source[sourceTo - 1], set
+     * k is vertices[begins[k]] ... vertices[ends[k] - 1].
+     *
+     * @param source
+     *            array with the common set
+     * @param sourceFrom
+     *            beginning of the common set (inclusive)
+     * @param sourceTo
+     *            end of the common set (exclusive)
+     * @param vertices
+     *            vertices of other sets
+     * @param begins
+     *            beginnings of other sets (inclusive)
+     * @param ends
+     *            ends of other sets (exclusive)
+     * @param lengths
+     *            array for storing lengths of shortest ancestral paths (-1 if
+     *            there is no such path)
+     * @param ancestors
+     *            array for storing common ancestors participating in shortest
+     *            ancestral paths (-1 if there is no such path)
+     */
+    public final void sap(final int[] source, final int sourceFrom,
+            final int sourceTo, final int[] vertices, final int[] begins,
+            final int[] ends, final int[] lengths, final int[] ancestors) {
+        Utils.check(begins.length == ends.length
+                && begins.length == lengths.length
+                && begins.length == ancestors.length,
+                new IllegalArgumentException("Arrays must have same length"));
+        final LayeredBreadthFirstDirectedSearch common = new
+                LayeredBreadthFirstDirectedSearch(digraph);
+        common.prepare(source, sourceFrom, sourceTo);
+        while (common.hasNextLayer()) {
+            common.nextLayer();
+        }
+        final int chunks = (begins.length + CHUNK - 1) / CHUNK;
+        ParallelRangeTask.invoke(new ParallelRangeTask.RangeProcessor() {
+            @Override
+            public void process(final int from, final int to) {
+                final Scratch scratch = scratches.get();
+                scratch.ensureCapacity(digraph.V());
+                for (int c = from; c < to; c++) {
+                    final int first = c * CHUNK;
+                    final int last = Math.min(first + CHUNK, begins.length);
+                    processChunk(scratch, common, vertices, begins, ends,
+                            first, last, lengths, ancestors);
+                }
+            }
+        }, chunks, CHUNKS_GRAIN);
+    }
+
+    /**
+     * Runs MS-BFS for sets from first (inclusive) to last (exclusive).
+     *
+     * @param scratch
+     *            scratch arrays of the current thread
+     * @param common
+     *            finished BFS from the common set
+     * @param vertices
+     *            vertices of other sets
+     * @param begins
+     *            beginnings of other sets (inclusive)
+     * @param ends
+     *            ends of other sets (exclusive)
+     * @param first
+     *            first set of the chunk
+     * @param last
+     *            set after the last set of the chunk
+     * @param lengths
+     *            array for storing lengths
+     * @param ancestors
+     *            array for storing ancestors
+     */
+    private void processChunk(final Scratch scratch,
+            final LayeredBreadthFirstDirectedSearch common,
+            final int[] vertices, final int[] begins, final int[] ends,
+            final int first, final int last, final int[] lengths,
+            final int[] ancestors) {
+        long[] visit = scratch.visit;
+        long[] visitNext = scratch.visitNext;
+        final long[] seen = scratch.seen;
+        int[] frontier = scratch.frontier;
+        int[] next = scratch.next;
+        int frontierSize = 0;
+        int touchedSize = 0;
+        for (int k = first; k < last; k++) {
+            final long bit = 1L << (k - first);
+            lengths[k] = -1;
+            ancestors[k] = -1;
+            for (int i = begins[k]; i < ends[k]; i++) {
+                final int v = vertices[i];
+                if (seen[v] == 0) {
+                    scratch.touched[touchedSize++] = v;
+                    frontier[frontierSize++] = v;
+                }
+                seen[v] |= bit;
+                visit[v] |= bit;
+            }
+        }
+        long active = last - first == CHUNK ? -1L
+                : (1L << (last - first)) - 1;
+        for (int layer = 0; frontierSize > 0 && active != 0; layer++) {
+            for (int i = 0; i < frontierSize; i++) {
+                final int v = frontier[i];
+                long reached = visit[v] & active;
+                if (reached != 0 && common.hasPathTo(v)) {
+                    final int length = layer + common.distTo(v);
+                    while (reached != 0) {
+                        final int k = first
+                                + Long.numberOfTrailingZeros(reached);
+                        reached &= reached - 1;
+                        if (lengths[k] == -1 || lengths[k] > length) {
+                            lengths[k] = length;
+                            ancestors[k] = v;
+                        }
+                    }
+                }
+            }
+            // paths found later are at least layer + 1 long
+            for (int k = first; k < last; k++) {
+                if (lengths[k] != -1 && lengths[k] <= layer + 1) {
+                    active &= ~(1L << (k - first));
+                }
+            }
+            int nextSize = 0;
+            for (int i = 0; i < frontierSize; i++) {
+                final int v = frontier[i];
+                final long reached = visit[v] & active;
+                visit[v] = 0;
+                if (reached == 0) {
+                    continue;
+                }
+                final int end = digraph.end(v);
+                for (int e = digraph.begin(v); e < end; e++) {
+                    final int w = digraph.target(e);
+                    final long fresh = reached & ~seen[w];
+                    if (fresh != 0) {
+                        if (seen[w] == 0) {
+                            scratch.touched[touchedSize++] = w;
+                        }
+                        if (visitNext[w] == 0) {
+                            next[nextSize++] = w;
+                        }
+                        seen[w] |= fresh;
+                        visitNext[w] |= fresh;
+                    }
+                }
+            }
+            final long[] visitTmp = visit;
+            visit = visitNext;
+            visitNext = visitTmp;
+            final int[] frontierTmp = frontier;
+            frontier = next;
+            next = frontierTmp;
+            frontierSize = nextSize;
+        }
+        for (int i = 0; i < frontierSize; i++) {
+            visit[frontier[i]] = 0;
+        }
+        for (int i = 0; i < touchedSize; i++) {
+            seen[scratch.touched[i]] = 0;
+        }
+        scratch.visit = visit;
+        scratch.visitNext = visitNext;
+        scratch.frontier = frontier;
+        scratch.next = next;
+    }
+
+    /**
+     * Scratch arrays of MS-BFS. Arrays of bits are zero between chunks.
+     *
+     * @author Sergey Esipenko
+     */
+    private static final class Scratch {
+
+        /**
+         * Searches which have reached the vertex.
+         */
+        private long[] seen;
+
+        /**
+         * Searches which have the vertex in the current layer.
+         */
+        private long[] visit;
+
+        /**
+         * Searches which have the vertex in the next layer.
+         */
+        private long[] visitNext;
+
+        /**
+         * Vertices of the current layer.
+         */
+        private int[] frontier;
+
+        /**
+         * Vertices of the next layer.
+         */
+        private int[] next;
+
+        /**
+         * Vertices with non-zero seen bits.
+         */
+        private int[] touched;
+
+        /**
+         * Constructor takes digraph.
+         *
+         * @param digraph
+         *            digraph where searches are performed
+         */
+        Scratch(final CompactDigraph digraph) {
+            allocate(digraph.V());
+        }
+
+        /**
+         * Enlarges arrays if the digraph has grown.
+         *
+         * @param vertices
+         *            current number of vertices
+         */
+        void ensureCapacity(final int vertices) {
+            if (seen.length < vertices) {
+                allocate(Math.max(vertices, 2 * seen.length));
+            }
+        }
+
+        /**
+         * Allocates zero arrays.
+         *
+         * @param capacity
+         *            number of vertices
+         */
+        private void allocate(final int capacity) {
+            seen = new long[capacity];
+            visit = new long[capacity];
+            visitNext = new long[capacity];
+            frontier = new int[capacity];
+            next = new int[capacity];
+            touched = new int[capacity];
+        }
+    }
+}
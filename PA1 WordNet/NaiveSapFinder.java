@@ -1,3 +1,6 @@
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Naive helper class for the SAP data type. This class do all work to find
  * shortest ancestral path (SAP) between two given sets of vertices in given
@@ -10,37 +13,66 @@
  */
 public class NaiveSapFinder extends AbstractSapFinder {
 
+    /**
+     * Factory of NaiveSapFinder objects.
+     */
+    public static final SapFinderFactory FACTORY = new SapFinderFactory() {
+        @Override
+        public SapFinder create(final CompactDigraph digraph) {
+            return new NaiveSapFinder(digraph);
+        }
+
+        @Override
+        public boolean supportsGrowth() {
+            return false;
+        }
+    };
+
+    /**
+     * Copy of digraph for BreadthFirstDirectedPaths helper types.
+     */
+    private final Digraph bfsDigraph;
+
     /**
      * Constructor takes digraph.
      *
      * @param directedGraph
      *            digraph for SAP processing.
      */
-    public NaiveSapFinder(final Digraph directedGraph) {
+    public NaiveSapFinder(final CompactDigraph directedGraph) {
         super(directedGraph);
+        this.bfsDigraph = directedGraph.toDigraph();
     }
 
     @Override
-    public final SapAnswer sap(final int first, final int second) {
+    public final long packedSap(final int first, final int second) {
         BreadthFirstDirectedPaths bfs1 = new BreadthFirstDirectedPaths(
-                getDigraph(), first);
+                bfsDigraph, first);
         BreadthFirstDirectedPaths bfs2 = new BreadthFirstDirectedPaths(
-                getDigraph(), second);
+                bfsDigraph, second);
         return sap(bfs1, bfs2);
     }
 
     @Override
-    public final SapAnswer sap(final Iterable<Integer> first,
+    public final long packedSap(final Iterable<Integer> first,
             final Iterable<Integer> second) {
         BreadthFirstDirectedPaths bfs1 = new BreadthFirstDirectedPaths(
-                getDigraph(), first);
+                bfsDigraph, first);
         BreadthFirstDirectedPaths bfs2 = new BreadthFirstDirectedPaths(
-                getDigraph(), second);
+                bfsDigraph, second);
         return sap(bfs1, bfs2);
     }
 
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo) {
+        return packedSap(asList(first, firstFrom, firstTo),
+                asList(second, secondFrom, secondTo));
+    }
+
     /**
-     * Finds optimal ancestor and returns corresponding SapAnswer object.
+     * Finds optimal ancestor and returns corresponding packed answer.
      *
      * @param bfs1
      *            helper BreadthFirstDirectedPaths object for the first set of
@@ -48,20 +80,42 @@ public class NaiveSapFinder extends AbstractSapFinder {
      * @param bfs2
      *            helper BreadthFirstDirectedPaths object for the second set of
      *            vertices
-     * @return answer for the query stored in the SapAnswer object
+     * @return answer for the query packed by SapAnswer.pack()
      */
-    private SapAnswer sap(final BreadthFirstDirectedPaths bfs1,
+    private long sap(final BreadthFirstDirectedPaths bfs1,
             final BreadthFirstDirectedPaths bfs2) {
-        SapAnswer sa = null;
+        int bestLength = -1;
+        int bestAncestor = -1;
         for (int v = 0; v < getDigraph().V(); v++) {
             if (bfs1.hasPathTo(v) && bfs2.hasPathTo(v)) {
                 final int length = bfs1.distTo(v) + bfs2.distTo(v);
-                if (sa == null || sa.getLength() > length) {
-                    sa = new SapAnswer(length, v);
+                if (bestLength == -1 || bestLength > length) {
+                    bestLength = length;
+                    bestAncestor = v;
                 }
             }
         }
-        return sa;
+        return SapAnswer.pack(bestLength, bestAncestor);
+    }
+
+    /**
+     * Copies range of array to list.
+     *
+     * @param array
+     *            array of vertices
+     * @param from
+     *            beginning of range (inclusive)
+     * @param to
+     *            end of range (exclusive)
+     * @return list of vertices
+     */
+    private static List<Integer> asList(final int[] array, final int from,
+            final int to) {
+        final List<Integer> list = new ArrayList<Integer>(to - from);
+        for (int i = from; i < to; i++) {
+            list.add(array[i]);
+        }
+        return list;
     }
 
 }
@@ -0,0 +1,390 @@
+import java.util.Arrays;
+
+/**
+ * The NearestNouns class finds nouns which are the closest to the given noun
+ * by length of ancestral path.
+ * <p>
+ * An ancestral path goes up through hypernyms to the common ancestor and then
+ * down through hyponyms. This implementation runs one BFS over pairs (vertex,
+ * direction) from all synsets of the noun: an upward state may go up or turn
+ * down, a downward state may go down only. A synset is at distance d when
+ * some of its states is reached at layer d first, so the nouns are found in
+ * nondecreasing order of distance and the search stops after the layer where
+ * k nouns are known. Nouns at the same distance are ranked alphabetically.
+ * The noun index of synsets (and the hyponym digraph unless it's given) is
+ * built at construction time. Each thread keeps its own search state: marks
+ * with constant-time clearing and a queue which grows with the search, so a
+ * query takes time proportional to the explored part of the graph and the
+ * object is thread-safe if updates aren't concurrent with queries.
+ * <p>
+ * The object follows growth of the digraphs and the noun index (they are
+ * updated by the caller): a new synset appends its nouns to the noun index of
+ * synsets, new edges need no update.
+ *
+ * @author Sergey Esipenko
+ */
+public class NearestNouns {
+
+    /**
+     * Hypernym relations.
+     */
+    private final CompactDigraph hypernyms;
+
+    /**
+     * Hyponym relations (reverse of hypernyms).
+     */
+    private final CompactDigraph hyponyms;
+
+    /**
+     * Index of nouns and their synsets.
+     */
+    private final NounIndex nounIndex;
+
+    /**
+     * Beginnings of ranges in synsetNouns array, synset v owns the range from
+     * synsetOffsets[v] (inclusive) to synsetOffsets[v + 1] (exclusive); it
+     * may have spare capacity.
+     */
+    private int[] synsetOffsets;
+
+    /**
+     * Positions of nouns of all synsets in the noun index; it may have spare
+     * capacity.
+     */
+    private int[] synsetNouns;
+
+    /**
+     * Number of indexed synsets.
+     */
+    private int synsetCount;
+
+    /**
+     * Search states of threads.
+     */
+    private final ThreadLocal<Search> searches;
+
+    /**
+     * Constructor takes hypernym relations and the noun index.
+     *
+     * @param digraph
+     *            digraph of hypernym relations
+     * @param nouns
+     *            index of nouns and their synsets
+     */
+    public NearestNouns(final CompactDigraph digraph, final NounIndex nouns) {
+        this(digraph, digraph.reverse(), nouns);
+    }
+
+    /**
+     * Constructor takes hypernym relations, their reverse and the noun index.
+     *
+     * @param digraph
+     *            digraph of hypernym relations
+     * @param reverse
+     *            digraph of hyponym relations
+     * @param nouns
+     *            index of nouns and their synsets
+     */
+    public NearestNouns(final CompactDigraph digraph,
+            final CompactDigraph reverse, final NounIndex nouns) {
+        this.hypernyms = digraph;
+        this.hyponyms = reverse;
+        this.nounIndex = nouns;
+        final int[] ids = nouns.ids();
+        this.synsetOffsets = new int[digraph.V() + 1];
+        for (int p = 0; p < nouns.size(); p++) {
+            for (int i = nouns.begin(p); i < nouns.end(p); i++) {
+                synsetOffsets[ids[i] + 1]++;
+            }
+        }
+        for (int v = 0; v < digraph.V(); v++) {
+            synsetOffsets[v + 1] += synsetOffsets[v];
+        }
+        final int[] positions = Arrays.copyOf(synsetOffsets, digraph.V());
+        this.synsetNouns = new int[synsetOffsets[digraph.V()]];
+        for (int p = 0; p < nouns.size(); p++) {
+            for (int i = nouns.begin(p); i < nouns.end(p); i++) {
+                synsetNouns[positions[ids[i]]++] = p;
+            }
+        }
+        this.synsetCount = digraph.V();
+        this.searches = new ThreadLocal<Search>() {
+            @Override
+            protected Search initialValue() {
+                return new Search(hypernyms.V(), nounIndex.size());
+            }
+        };
+    }
+
+    /**
+     * Indexes nouns of a new synset. The synset must be the next one after
+     * the indexed synsets.
+     *
+     * @param v
+     *            the new synset
+     * @param positions
+     *            positions of its nouns in the noun index
+     */
+    public void addSynset(final int v, final int[] positions) {
+        if (v != synsetCount) {
+            throw new IllegalArgumentException("Synset " + v
+                    + " isn't the next one");
+        }
+        if (v + 1 == synsetOffsets.length) {
+            synsetOffsets = Arrays.copyOf(synsetOffsets, 2 * (v + 1));
+        }
+        final int begin = synsetOffsets[v];
+        final int end = begin + positions.length;
+        if (end > synsetNouns.length) {
+            synsetNouns = Arrays.copyOf(synsetNouns,
+                    Math.max(end, 2 * synsetNouns.length));
+        }
+        System.arraycopy(positions, 0, synsetNouns, begin, positions.length);
+        synsetOffsets[v + 1] = end;
+        synsetCount++;
+    }
+
+    /**
+     * Finds k nouns which are the closest to the given one. The noun itself
+     * isn't included, its synonyms are (at distance 0).
+     *
+     * @param position
+     *            position of the noun in the noun index
+     * @param k
+     *            number of nouns to find
+     * @return positions of found nouns in ranked order (fewer than k if there
+     *         are not enough reachable nouns)
+     */
+    public int[] nearest(final int position, final int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException(
+                    "Number of nouns must be nonnegative");
+        }
+        final int[] result = new int[Math.min(k, nounIndex.size())];
+        int count = 0;
+        final Search search = searches.get();
+        search.ensureCapacity(hypernyms.V(), nounIndex.size());
+        search.clear();
+        final int[] ids = nounIndex.ids();
+        search.found.mark(position);
+        for (int i = nounIndex.begin(position); i < nounIndex.end(position);
+                i++) {
+            search.visit(up(ids[i]));
+        }
+        int[] layerNouns = new int[0];
+        int layerBegin = 0;
+        while (count < result.length && layerBegin < search.size) {
+            final int layerEnd = search.size;
+            int layerSize = 0;
+            for (int i = layerBegin; i < layerEnd; i++) {
+                final int v = vertex(search.queue[i]);
+                for (int j = synsetOffsets[v]; j < synsetOffsets[v + 1]; j++) {
+                    final int p = synsetNouns[j];
+                    if (search.found.mark(p)) {
+                        if (layerSize == layerNouns.length) {
+                            layerNouns = Arrays.copyOf(layerNouns,
+                                    2 * layerSize + 1);
+                        }
+                        layerNouns[layerSize++] = p;
+                    }
+                }
+            }
+            rank(layerNouns, layerSize);
+            for (int i = 0; i < layerSize && count < result.length; i++) {
+                result[count++] = layerNouns[i];
+            }
+            if (count < result.length) {
+                expandLayer(search, layerBegin, layerEnd);
+            }
+            layerBegin = layerEnd;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Sorts nouns alphabetically. Positions of nouns which were sorted by the
+     * noun index are ordered like the nouns, so the array is sorted by
+     * positions first and the nouns added later are inserted by comparison.
+     *
+     * @param positions
+     *            positions of nouns in the noun index
+     * @param size
+     *            number of positions to sort
+     */
+    private void rank(final int[] positions, final int size) {
+        Arrays.sort(positions, 0, size);
+        final int sorted = nounIndex.sortedSize();
+        int added = size;
+        while (added > 0 && positions[added - 1] >= sorted) {
+            added--;
+        }
+        for (int i = added; i < size; i++) {
+            final int p = positions[i];
+            final String noun = nounIndex.noun(p);
+            int j = i;
+            while (j > 0 && nounIndex.noun(positions[j - 1])
+                    .compareTo(noun) > 0) {
+                positions[j] = positions[j - 1];
+                j--;
+            }
+            positions[j] = p;
+        }
+    }
+
+    /**
+     * Visits all states reachable from the current layer by one edge.
+     *
+     * @param search
+     *            search state of the thread
+     * @param layerBegin
+     *            beginning of the current layer in the queue (inclusive)
+     * @param layerEnd
+     *            end of the current layer in the queue (exclusive)
+     */
+    private void expandLayer(final Search search, final int layerBegin,
+            final int layerEnd) {
+        for (int i = layerBegin; i < layerEnd; i++) {
+            final int state = search.queue[i];
+            final int v = vertex(state);
+            if (isUp(state)) {
+                for (int e = hypernyms.begin(v); e < hypernyms.end(v); e++) {
+                    search.visit(up(hypernyms.target(e)));
+                }
+            }
+            for (int e = hyponyms.begin(v); e < hyponyms.end(v); e++) {
+                final int w = hyponyms.target(e);
+                // upward state of w can do everything its downward state can
+                if (!search.states.isMarked(up(w))) {
+                    search.visit(down(w));
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds upward state of vertex.
+     *
+     * @param v
+     *            the vertex
+     * @return the state
+     */
+    private static int up(final int v) {
+        return v << 1;
+    }
+
+    /**
+     * Builds downward state of vertex.
+     *
+     * @param v
+     *            the vertex
+     * @return the state
+     */
+    private static int down(final int v) {
+        return (v << 1) | 1;
+    }
+
+    /**
+     * Extracts vertex from state.
+     *
+     * @param state
+     *            the state
+     * @return vertex of the state
+     */
+    private static int vertex(final int state) {
+        return state >>> 1;
+    }
+
+    /**
+     * Checks direction of state.
+     *
+     * @param state
+     *            the state
+     * @return true for upward state; false for downward one
+     */
+    private static boolean isUp(final int state) {
+        return (state & 1) == 0;
+    }
+
+    /**
+     * Search state of one thread.
+     *
+     * @author Sergey Esipenko
+     */
+    private static final class Search {
+
+        /**
+         * Initial capacity of the queue.
+         */
+        private static final int INITIAL_CAPACITY = 64;
+
+        /**
+         * Marks of visited states.
+         */
+        private final StampedMarks states;
+
+        /**
+         * Marks of found nouns.
+         */
+        private final StampedMarks found;
+
+        /**
+         * Visited states in order of visiting.
+         */
+        private int[] queue = new int[INITIAL_CAPACITY];
+
+        /**
+         * Number of visited states.
+         */
+        private int size;
+
+        /**
+         * Constructor takes sizes of the digraph and the noun index.
+         *
+         * @param vertices
+         *            number of vertices
+         * @param nouns
+         *            number of nouns
+         */
+        Search(final int vertices, final int nouns) {
+            this.states = new StampedMarks(2 * vertices);
+            this.found = new StampedMarks(nouns);
+        }
+
+        /**
+         * Enlarges marks to sizes of the digraph and the noun index.
+         *
+         * @param vertices
+         *            number of vertices
+         * @param nouns
+         *            number of nouns
+         */
+        void ensureCapacity(final int vertices, final int nouns) {
+            states.ensureCapacity(2 * vertices);
+            found.ensureCapacity(nouns);
+        }
+
+        /**
+         * Forgets the previous search.
+         */
+        void clear() {
+            states.clear();
+            found.clear();
+            size = 0;
+        }
+
+        /**
+         * Marks state and adds it to the queue unless it's visited.
+         *
+         * @param state
+         *            the state
+         */
+        void visit(final int state) {
+            if (states.mark(state)) {
+                if (size == queue.length) {
+                    queue = Arrays.copyOf(queue, 2 * size);
+                }
+                queue[size++] = state;
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The NounIndex class maps nouns to identifiers of their synsets. Index which
+ * never grows is thread-safe.
+ * <p>
+ * This implementation stores dictionary of nouns and flat int arrays:
+ * synsets of the noun at position p are ids()[begin(p)] ... ids()[end(p) - 1].
+ * Lookup uses an open-addressing hash table of noun positions, so neither
+ * lookup nor iteration over synsets box integers.
+ * <p>
+ * Nouns given to constructor are sorted, nouns added by add() follow them in
+ * order of addition. Growth works like in CompactDigraph: a noun which gets a
+ * new synset moves its range to the end of ids array, so ranges may have gaps
+ * between them. Growth isn't thread-safe.
+ *
+ * @author Sergey Esipenko
+ */
+public class NounIndex {
+
+    /**
+     * Minimal capacity of arrays after growth.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Nouns (no duplicates).
+     */
+    private String[] nouns;
+
+    /**
+     * Beginnings of synsets ranges.
+     */
+    private int[] begins;
+
+    /**
+     * Ends of synsets ranges.
+     */
+    private int[] ends;
+
+    /**
+     * Synset identifiers of all nouns (unused slots are left by moved
+     * ranges).
+     */
+    private int[] ids;
+
+    /**
+     * Hash table of noun positions plus one (0 means empty slot).
+     */
+    private int[] table;
+
+    /**
+     * Number of nouns.
+     */
+    private int size;
+
+    /**
+     * Number of used slots of ids array.
+     */
+    private int slots;
+
+    /**
+     * Number of nouns given to constructor (they are sorted).
+     */
+    private final int sortedSize;
+
+    /**
+     * Constructor takes (noun, synset id) pairs. Pairs of each noun keep their
+     * relative order.
+     *
+     * @param pairNouns
+     *            nouns of pairs
+     * @param pairIds
+     *            synset identifiers of pairs
+     * @param pairs
+     *            number of pairs
+     */
+    public NounIndex(final String[] pairNouns, final int[] pairIds,
+            final int pairs) {
+        final Map<String, Integer> numbers = new HashMap<String, Integer>();
+        final int[] pairNumbers = new int[pairs];
+        for (int i = 0; i < pairs; i++) {
+            Integer number = numbers.get(pairNouns[i]);
+            if (number == null) {
+                number = numbers.size();
+                numbers.put(pairNouns[i], number);
+            }
+            pairNumbers[i] = number;
+        }
+        this.nouns = numbers.keySet().toArray(new String[numbers.size()]);
+        Arrays.sort(nouns);
+        final int[] positions = new int[nouns.length];
+        for (int p = 0; p < nouns.length; p++) {
+            positions[numbers.get(nouns[p])] = p;
+        }
+        final int[] offsets = new int[nouns.length + 1];
+        for (int i = 0; i < pairs; i++) {
+            offsets[positions[pairNumbers[i]] + 1]++;
+        }
+        for (int p = 0; p < nouns.length; p++) {
+            offsets[p + 1] += offsets[p];
+        }
+        final int[] next = Arrays.copyOf(offsets, nouns.length);
+        this.ids = new int[pairs];
+        for (int i = 0; i < pairs; i++) {
+            ids[next[positions[pairNumbers[i]]]++] = pairIds[i];
+        }
+        this.size = nouns.length;
+        this.sortedSize = size;
+        this.slots = pairs;
+        this.begins = Arrays.copyOf(offsets, size);
+        this.ends = Arrays.copyOfRange(offsets, 1, size + 1);
+        this.table = buildTable(nouns, size);
+    }
+
+    /**
+     * Constructor takes ready arrays (e.g. read from snapshot). Arrays are not
+     * copied.
+     *
+     * @param sortedNouns
+     *            sorted nouns (no duplicates)
+     * @param idOffsets
+     *            offsets of synsets ranges
+     * @param synsetIds
+     *            synset identifiers of all nouns
+     */
+    public NounIndex(final String[] sortedNouns, final int[] idOffsets,
+            final int[] synsetIds) {
+        Utils.check(idOffsets.length == sortedNouns.length + 1
+                && idOffsets[sortedNouns.length] == synsetIds.length,
+                new IllegalArgumentException("Index arrays are inconsistent"));
+        this.nouns = sortedNouns;
+        this.ids = synsetIds;
+        this.size = sortedNouns.length;
+        this.sortedSize = size;
+        this.slots = synsetIds.length;
+        this.begins = Arrays.copyOf(idOffsets, size);
+        this.ends = Arrays.copyOfRange(idOffsets, 1, size + 1);
+        this.table = buildTable(nouns, size);
+    }
+
+    /**
+     * Finds position of the noun.
+     *
+     * @param noun
+     *            the noun
+     * @return position of the noun; -1 if there is no such noun
+     */
+    public final int find(final String noun) {
+        final int mask = table.length - 1;
+        for (int slot = spread(noun.hashCode()) & mask; table[slot] != 0;
+                slot = (slot + 1) & mask) {
+            final int p = table[slot] - 1;
+            if (nouns[p].equals(noun)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns number of nouns.
+     *
+     * @return number of nouns
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Returns number of nouns given to constructor. They take the first
+     * positions in alphabetical order, nouns added later follow them.
+     *
+     * @return number of sorted nouns
+     */
+    public final int sortedSize() {
+        return sortedSize;
+    }
+
+    /**
+     * Returns noun at given position.
+     *
+     * @param p
+     *            position of the noun
+     * @return the noun
+     */
+    public final String noun(final int p) {
+        return nouns[p];
+    }
+
+    /**
+     * Returns list of all nouns in order of positions.
+     *
+     * @return unmodifiable list of nouns
+     */
+    public final List<String> nouns() {
+        return Collections.unmodifiableList(Arrays.asList(nouns).subList(0,
+                size));
+    }
+
+    /**
+     * Returns beginning of synsets range of the noun.
+     *
+     * @param p
+     *            position of the noun
+     * @return beginning of range in ids() (inclusive)
+     */
+    public final int begin(final int p) {
+        return begins[p];
+    }
+
+    /**
+     * Returns end of synsets range of the noun.
+     *
+     * @param p
+     *            position of the noun
+     * @return end of range in ids() (exclusive)
+     */
+    public final int end(final int p) {
+        return ends[p];
+    }
+
+    /**
+     * Returns synset identifiers of all nouns. The array must not be modified,
+     * it's replaced when the index grows.
+     *
+     * @return synset identifiers of all nouns
+     */
+    public final int[] ids() {
+        return ids;
+    }
+
+    /**
+     * Adds the noun unless it's already stored.
+     *
+     * @param noun
+     *            the noun
+     * @return position of the noun
+     */
+    public final int add(final String noun) {
+        final int found = find(noun);
+        if (found != -1) {
+            return found;
+        }
+        if (size == nouns.length) {
+            final int capacity = Math.max(MIN_CAPACITY, 2 * size);
+            nouns = Arrays.copyOf(nouns, capacity);
+            begins = Arrays.copyOf(begins, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        nouns[size] = noun;
+        begins[size] = slots;
+        ends[size] = slots;
+        size++;
+        if (2 * size > table.length) {
+            table = buildTable(nouns, size);
+        } else {
+            insert(table, noun, size - 1);
+        }
+        return size - 1;
+    }
+
+    /**
+     * Adds synset identifier to the noun. Range of the noun is moved to the
+     * end of ids array unless it's already there.
+     *
+     * @param p
+     *            position of the noun
+     * @param id
+     *            synset identifier
+     */
+    public final void addId(final int p, final int id) {
+        final int count = ends[p] - begins[p];
+        if (ends[p] == slots) {
+            if (slots == ids.length) {
+                reallocate(1);
+            }
+        } else if (slots + count + 1 > ids.length) {
+            reallocate(count + 1);
+        }
+        if (ends[p] != slots) {
+            System.arraycopy(ids, begins[p], ids, slots, count);
+            begins[p] = slots;
+            slots += count;
+        }
+        ids[slots++] = id;
+        ends[p] = slots;
+    }
+
+    /**
+     * Copies all ranges without gaps into a new ids array.
+     *
+     * @param extra
+     *            number of slots which must be available after copying
+     */
+    private void reallocate(final int extra) {
+        int total = 0;
+        for (int p = 0; p < size; p++) {
+            total += ends[p] - begins[p];
+        }
+        final int[] newIds = new int[Math.max(MIN_CAPACITY,
+                2 * (total + extra))];
+        int i = 0;
+        for (int p = 0; p < size; p++) {
+            final int count = ends[p] - begins[p];
+            System.arraycopy(ids, begins[p], newIds, i, count);
+            begins[p] = i;
+            i += count;
+            ends[p] = i;
+        }
+        ids = newIds;
+        slots = i;
+    }
+
+    /**
+     * Builds hash table of noun positions.
+     *
+     * @param allNouns
+     *            nouns
+     * @param count
+     *            number of nouns
+     * @return hash table with capacity at least twice the number of nouns
+     */
+    private static int[] buildTable(final String[] allNouns, final int count) {
+        final int capacity = Integer.highestOneBit(
+                Math.max(1, 2 * count - 1)) << 1;
+        final int[] hashTable = new int[capacity];
+        for (int p = 0; p < count; p++) {
+            insert(hashTable, allNouns[p], p);
+        }
+        return hashTable;
+    }
+
+    /**
+     * Inserts noun position into hash table.
+     *
+     * @param hashTable
+     *            hash table with free slots
+     * @param noun
+     *            the noun
+     * @param p
+     *            position of the noun
+     */
+    private static void insert(final int[] hashTable, final String noun,
+            final int p) {
+        final int mask = hashTable.length - 1;
+        int slot = spread(noun.hashCode()) & mask;
+        while (hashTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        hashTable[slot] = p + 1;
+    }
+
+    /**
+     * Spreads higher bits of hash code to lower ones.
+     *
+     * @param h
+     *            hash code
+     * @return spread hash code
+     */
+    private static int spread(final int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,361 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Memory-bounded helper class for SAP queries on graphs larger than the Java
+ * heap. It works on MappedDigraph and implements the same two-way search as
+ * TwoWaySapFinder (layers of both searches are processed in lockstep).
+ * <p>
+ * Per-vertex distances of both searches are kept in direct buffers out of the
+ * heap (4 bytes per vertex and search), so neither the graph nor the scratch
+ * arrays are scanned by the garbage collector. Queues of visited vertices are
+ * kept in the heap and grow with the search, so their size is proportional to
+ * the number of visited vertices rather than to the size of the graph; they
+ * are also used to clear distances before the next query. Direct memory is
+ * limited by -XX:MaxDirectMemorySize option. The object isn't thread-safe,
+ * use one object per thread (the digraph may be shared).
+ *
+ * @author Sergey Esipenko
+ */
+public class OffHeapSapFinder implements SapFinder {
+
+    /**
+     * Digraph where searches are performed.
+     */
+    private final MappedDigraph digraph;
+
+    /**
+     * Search from the first set of vertices.
+     */
+    private final Search search1;
+
+    /**
+     * Search from the second set of vertices.
+     */
+    private final Search search2;
+
+    /**
+     * Length of the best ancestral path found by the current query.
+     */
+    private int bestLength;
+
+    /**
+     * Common ancestor in the best ancestral path found by the current query.
+     */
+    private int bestAncestor;
+
+    /**
+     * Constructor takes digraph.
+     *
+     * @param directedGraph
+     *            digraph for SAP processing
+     */
+    public OffHeapSapFinder(final MappedDigraph directedGraph) {
+        this.digraph = directedGraph;
+        this.search1 = new Search(digraph.V());
+        this.search2 = new Search(digraph.V());
+    }
+
+    @Override
+    public final SapAnswer sap(final int first, final int second) {
+        return SapAnswer.unpack(packedSap(first, second));
+    }
+
+    @Override
+    public final SapAnswer sap(final Iterable<Integer> first,
+            final Iterable<Integer> second) {
+        return SapAnswer.unpack(packedSap(first, second));
+    }
+
+    @Override
+    public final long packedSap(final int first, final int second) {
+        return packedSap(first, second, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second) {
+        return packedSap(first, second, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int[] second) {
+        return packedSap(first, 0, first.length, second, 0, second.length);
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo) {
+        return packedSap(first, firstFrom, firstTo, second, secondFrom,
+                secondTo, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final long packedSap(final int first, final int second,
+            final int maxLength) {
+        search1.clear();
+        search1.add(first);
+        search2.clear();
+        search2.add(second);
+        return sap(maxLength);
+    }
+
+    @Override
+    public final long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second, final int maxLength) {
+        search1.clear();
+        for (int v : first) {
+            search1.add(v);
+        }
+        search2.clear();
+        for (int v : second) {
+            search2.add(v);
+        }
+        return sap(maxLength);
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo, final int maxLength) {
+        search1.clear();
+        for (int i = firstFrom; i < firstTo; i++) {
+            search1.add(first[i]);
+        }
+        search2.clear();
+        for (int i = secondFrom; i < secondTo; i++) {
+            search2.add(second[i]);
+        }
+        return sap(maxLength);
+    }
+
+    @Override
+    public final boolean supportsGrowth() {
+        return false;
+    }
+
+    /**
+     * Not supported: the mapped digraph is read-only.
+     *
+     * @param v
+     *            the new vertex
+     */
+    @Override
+    public final void vertexAdded(final int v) {
+        throw new UnsupportedOperationException("Digraph is read-only");
+    }
+
+    /**
+     * Not supported: the mapped digraph is read-only.
+     *
+     * @param from
+     *            tail of the new edge
+     * @param to
+     *            head of the new edge
+     * @param affected
+     *            the tail and all vertices it is reachable from
+     */
+    @Override
+    public final void edgeAdded(final int from, final int to,
+            final int[] affected) {
+        throw new UnsupportedOperationException("Digraph is read-only");
+    }
+
+    /**
+     * For unit testing of this class.
+     *
+     * @param args
+     *            command line arguments (graph file written by MappedDigraph)
+     */
+    public static void main(final String[] args) {
+        OffHeapSapFinder finder = new OffHeapSapFinder(new MappedDigraph(
+                args[0]));
+        while (!StdIn.isEmpty()) {
+            int v = StdIn.readInt();
+            int w = StdIn.readInt();
+            long packed = finder.packedSap(v, w);
+            StdOut.printf("length = %d, ancestor = %d\n",
+                    SapAnswer.unpackLength(packed),
+                    SapAnswer.unpackAncestor(packed));
+        }
+    }
+
+    /**
+     * Runs prepared searches in lockstep until the best answer is known or
+     * the bound is exceeded.
+     *
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack()
+     */
+    private long sap(final int maxLength) {
+        bestLength = -1;
+        bestAncestor = -1;
+        for (int layer = 0; layer <= maxLength
+                && (bestLength == -1 || bestLength > layer); layer++) {
+            if (!search1.hasNextLayer() && !search2.hasNextLayer()) {
+                break;
+            }
+            if (search1.hasNextLayer()) {
+                processLayer(search1, search2);
+            }
+            if (search2.hasNextLayer()) {
+                processLayer(search2, search1);
+            }
+        }
+        return SapAnswer.bound(SapAnswer.pack(bestLength, bestAncestor),
+                maxLength);
+    }
+
+    /**
+     * Processes the current layer of one search: checks whether its vertices
+     * are reached by the other search and enqueues their hypernyms.
+     *
+     * @param own
+     *            search to advance
+     * @param other
+     *            opposite search
+     */
+    private void processLayer(final Search own, final Search other) {
+        final int end = own.size;
+        for (int i = own.head; i < end; i++) {
+            final int v = own.queue[i];
+            final int dist = own.distTo(v);
+            if (other.isMarked(v)) {
+                final int length = dist + other.distTo(v);
+                if (bestLength == -1 || bestLength > length) {
+                    bestLength = length;
+                    bestAncestor = v;
+                }
+            }
+            final int edgesEnd = digraph.end(v);
+            for (int e = digraph.begin(v); e < edgesEnd; e++) {
+                final int w = digraph.target(e);
+                if (!own.isMarked(w)) {
+                    own.enqueue(w, dist + 1);
+                }
+            }
+        }
+        own.head = end;
+    }
+
+    /**
+     * State of one BFS: off-heap distances and on-heap queue.
+     *
+     * @author Sergey Esipenko
+     */
+    private static final class Search {
+
+        /**
+         * Initial capacity of the queue.
+         */
+        private static final int INITIAL_CAPACITY = 64;
+
+        /**
+         * Distances plus one of visited vertices (0 for unvisited ones).
+         */
+        private final IntBuffer marks;
+
+        /**
+         * Visited vertices in order of visiting.
+         */
+        private int[] queue = new int[INITIAL_CAPACITY];
+
+        /**
+         * Beginning of the current layer in the queue.
+         */
+        private int head;
+
+        /**
+         * Number of visited vertices.
+         */
+        private int size;
+
+        /**
+         * Constructor allocates zero distances out of the heap.
+         *
+         * @param vertices
+         *            number of vertices
+         */
+        Search(final int vertices) {
+            this.marks = ByteBuffer.allocateDirect(4 * vertices)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+        /**
+         * Unmarks vertices visited by the previous search.
+         */
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                marks.put(queue[i], 0);
+            }
+            head = 0;
+            size = 0;
+        }
+
+        /**
+         * Adds source vertex.
+         *
+         * @param v
+         *            the vertex
+         */
+        void add(final int v) {
+            if (v < 0 || v >= marks.capacity()) {
+                throw new IndexOutOfBoundsException("Wrong vertex " + v);
+            }
+            if (!isMarked(v)) {
+                enqueue(v, 0);
+            }
+        }
+
+        /**
+         * Checks whether there is a layer to process.
+         *
+         * @return true if the current layer isn't empty
+         */
+        boolean hasNextLayer() {
+            return head < size;
+        }
+
+        /**
+         * Checks whether vertex is visited.
+         *
+         * @param v
+         *            the vertex
+         * @return true if vertex is visited
+         */
+        boolean isMarked(final int v) {
+            return marks.get(v) != 0;
+        }
+
+        /**
+         * Returns distance to visited vertex.
+         *
+         * @param v
+         *            the vertex
+         * @return length of the shortest path from sources
+         */
+        int distTo(final int v) {
+            return marks.get(v) - 1;
+        }
+
+        /**
+         * Marks vertex and adds it to the queue.
+         *
+         * @param v
+         *            the vertex
+         * @param dist
+         *            distance to the vertex
+         */
+        void enqueue(final int v, final int dist) {
+            marks.put(v, dist + 1);
+            if (size == queue.length) {
+                queue = Arrays.copyOf(queue, 2 * size);
+            }
+            queue[size++] = v;
+        }
+    }
+}
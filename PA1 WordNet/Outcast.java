@@ -21,23 +21,25 @@ public class Outcast {
     }
 
     /**
-     * For given set of nouns determines an outcast.
+     * For given set of nouns determines an outcast. All distances are
+     * computed at once by WordNet.distances() (one search per noun).
      *
      * @param nouns
      *            set of nouns
      * @return outcast
      */
     public String outcast(final String[] nouns) {
+        final int[][] distances = wordNet.distances(nouns);
         String outcast = null;
         int outcastDist = -1;
-        for (String noun : nouns) {
+        for (int i = 0; i < nouns.length; i++) {
             int dist = 0;
-            for (String test : nouns) {
-                dist += wordNet.distance(noun, test);
+            for (int j = 0; j < nouns.length; j++) {
+                dist += distances[i][j];
             }
             if (outcastDist < dist) {
                 outcastDist = dist;
-                outcast = noun;
+                outcast = nouns[i];
             }
         }
         return outcast;
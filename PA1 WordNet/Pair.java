@@ -1,10 +1,9 @@
-import java.util.HashSet;
-import java.util.Set;
-
 /**
- * The Pair class is designed for storing two elements of type T.
+ * The Pair class is designed for storing two elements of type T. Pairs are
+ * unordered: Pair(a, b) is equal to Pair(b, a).
  * <p>
- * This implementation uses java.lang.Set<T> to store elements.
+ * This implementation stores both elements in fields, so it is cheap enough to
+ * be used as a key of hash tables.
  *
  * @author Sergey Esipenko
  * @param <T>
@@ -13,9 +12,14 @@ import java.util.Set;
 public class Pair<T> {
 
     /**
-     * Set for storing elements of the pair.
+     * First element of the pair.
+     */
+    private final T first;
+
+    /**
+     * Second element of the pair.
      */
-    private Set<T> set;
+    private final T second;
 
     /**
      * Constructor takes to elements of type T.
@@ -26,14 +30,34 @@ public class Pair<T> {
      *            second element
      */
     public Pair(final T first, final T second) {
-        this.set = new HashSet<T>();
-        set.add(first);
-        set.add(second);
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Getter for the first element.
+     *
+     * @return first element of the pair
+     */
+    public final T getFirst() {
+        return first;
+    }
+
+    /**
+     * Getter for the second element.
+     *
+     * @return second element of the pair
+     */
+    public final T getSecond() {
+        return second;
     }
 
     @Override
     public final int hashCode() {
-        return set.hashCode();
+        if (first.equals(second)) {
+            return first.hashCode();
+        }
+        return first.hashCode() + second.hashCode();
     }
 
     @Override
@@ -43,11 +67,15 @@ public class Pair<T> {
         }
         @SuppressWarnings("rawtypes")
         Pair p = (Pair) obj;
-        return set.equals(p.set);
+        return (first.equals(p.first) && second.equals(p.second))
+                || (first.equals(p.second) && second.equals(p.first));
     }
 
     @Override
     public final String toString() {
-        return set.toString();
+        if (first.equals(second)) {
+            return "[" + first + "]";
+        }
+        return "[" + first + ", " + second + "]";
     }
 }
@@ -0,0 +1,124 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The ParallelRangeTask class is designed to process range of indexes in
+ * parallel. The range is split in halves recursively until it becomes smaller
+ * than the grain size, then each part is passed to the RangeProcessor.
+ * <p>
+ * This implementation relies on the fork-join framework.
+ *
+ * @author Sergey Esipenko
+ */
+public class ParallelRangeTask extends RecursiveAction {
+
+    /**
+     * Default number of indexes processed by one leaf task.
+     */
+    public static final int DEFAULT_GRAIN = 64;
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Processor of index ranges.
+     */
+    private final RangeProcessor processor;
+
+    /**
+     * Beginning of the range (inclusive).
+     */
+    private final int from;
+
+    /**
+     * End of the range (exclusive).
+     */
+    private final int to;
+
+    /**
+     * Maximal size of range processed without splitting.
+     */
+    private final int grain;
+
+    /**
+     * Constructor takes processor, range and grain size.
+     *
+     * @param rangeProcessor
+     *            processor of index ranges
+     * @param fromIndex
+     *            beginning of the range (inclusive)
+     * @param toIndex
+     *            end of the range (exclusive)
+     * @param grainSize
+     *            maximal size of range processed without splitting
+     */
+    public ParallelRangeTask(final RangeProcessor rangeProcessor,
+            final int fromIndex, final int toIndex, final int grainSize) {
+        this.processor = rangeProcessor;
+        this.from = fromIndex;
+        this.to = toIndex;
+        this.grain = Math.max(1, grainSize);
+    }
+
+    /**
+     * Processes indexes from 0 (inclusive) to size (exclusive) in the common
+     * fork-join pool and waits for completion.
+     *
+     * @param rangeProcessor
+     *            processor of index ranges
+     * @param size
+     *            number of indexes
+     */
+    public static void invoke(final RangeProcessor rangeProcessor,
+            final int size) {
+        invoke(rangeProcessor, size, DEFAULT_GRAIN);
+    }
+
+    /**
+     * Processes indexes from 0 (inclusive) to size (exclusive) in the common
+     * fork-join pool with given grain size and waits for completion.
+     *
+     * @param rangeProcessor
+     *            processor of index ranges
+     * @param size
+     *            number of indexes
+     * @param grainSize
+     *            maximal size of range processed without splitting
+     */
+    public static void invoke(final RangeProcessor rangeProcessor,
+            final int size, final int grainSize) {
+        ForkJoinPool.commonPool().invoke(
+                new ParallelRangeTask(rangeProcessor, 0, size, grainSize));
+    }
+
+    @Override
+    protected final void compute() {
+        if (to - from <= grain) {
+            processor.process(from, to);
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        invokeAll(new ParallelRangeTask(processor, from, middle, grain),
+                new ParallelRangeTask(processor, middle, to, grain));
+    }
+
+    /**
+     * Interface for range processors. Processors are called from several
+     * threads simultaneously, so they must be thread-safe.
+     *
+     * @author Sergey Esipenko
+     */
+    public interface RangeProcessor {
+        /**
+         * Processes indexes of given range.
+         *
+         * @param from
+         *            beginning of the range (inclusive)
+         * @param to
+         *            end of the range (exclusive)
+         */
+        void process(final int from, final int to);
+    }
+}
@@ -0,0 +1,289 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The QueryPipeline class streams query lines through a pool of workers. It is
+ * designed for offline jobs piping millions of queries through command line
+ * clients.
+ * <p>
+ * Input is read in large blocks which are cut at the last line separator, so
+ * each batch holds whole lines (a query must not span lines) and the rest of
+ * the block goes to the next batch. Batches are parsed and answered by
+ * workers in any order, but outputs are written in order of input: the reader
+ * thread keeps futures of batches in a queue and writes the oldest one when
+ * too many batches are in flight, so memory use is bounded.
+ *
+ * @author Sergey Esipenko
+ */
+public final class QueryPipeline {
+
+    /**
+     * Charset of queries and answers.
+     */
+    public static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Size of input block in bytes.
+     */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Number of batches in flight per worker.
+     */
+    private static final int BATCHES_PER_WORKER = 4;
+
+    /**
+     * Private constructor. Prevents from instancing.
+     */
+    private QueryPipeline() {
+    }
+
+    /**
+     * Answers all query lines of input stream and writes answers to output
+     * stream in order of queries. Streams aren't closed, output is flushed.
+     * Throws IllegalArgumentException if processor fails on some batch.
+     *
+     * @param in
+     *            input stream of query lines
+     * @param out
+     *            output stream for answers
+     * @param processor
+     *            processor of batches (called from several threads
+     *            simultaneously, so it must be thread-safe)
+     * @param workers
+     *            number of worker threads
+     */
+    public static void run(final InputStream in, final OutputStream out,
+            final BatchProcessor processor, final int workers) {
+        Utils.check(workers > 0, new IllegalArgumentException(
+                "Number of workers must be positive"));
+        final ExecutorService pool = Executors.newFixedThreadPool(workers);
+        final ArrayDeque<Future<byte[]>> pending =
+                new ArrayDeque<Future<byte[]>>();
+        try {
+            byte[] block = new byte[BLOCK_SIZE];
+            int size = 0;
+            int read;
+            while ((read = in.read(block, size, block.length - size)) != -1) {
+                size += read;
+                if (size < block.length) {
+                    continue;
+                }
+                int cut = size;
+                while (cut > 0 && block[cut - 1] != '\n') {
+                    cut--;
+                }
+                if (cut == 0) {
+                    // a line longer than the block: enlarge the block
+                    block = Arrays.copyOf(block, 2 * block.length);
+                    continue;
+                }
+                pending.add(submit(pool, processor, block, cut));
+                // the rest of an enlarged block may exceed BLOCK_SIZE
+                final byte[] next = new byte[Math.max(BLOCK_SIZE, size - cut)];
+                System.arraycopy(block, cut, next, 0, size - cut);
+                block = next;
+                size -= cut;
+                if (pending.size() >= BATCHES_PER_WORKER * workers) {
+                    out.write(await(pending.poll()));
+                }
+            }
+            if (size > 0) {
+                pending.add(submit(pool, processor, block, size));
+            }
+            while (!pending.isEmpty()) {
+                out.write(await(pending.poll()));
+            }
+            out.flush();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Could not process queries",
+                    ex);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits batch to the pool.
+     *
+     * @param pool
+     *            pool of workers
+     * @param processor
+     *            processor of batches
+     * @param batch
+     *            batch content (owned by the task from now on)
+     * @param length
+     *            number of bytes in the batch
+     * @return future of the batch output
+     */
+    private static Future<byte[]> submit(final ExecutorService pool,
+            final BatchProcessor processor, final byte[] batch,
+            final int length) {
+        return pool.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return processor.process(batch, length);
+            }
+        });
+    }
+
+    /**
+     * Waits for output of batch.
+     *
+     * @param future
+     *            future of the batch output
+     * @return output of the batch
+     */
+    private static byte[] await(final Future<byte[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalArgumentException("Could not process batch",
+                    ex.getCause());
+        }
+    }
+
+    /**
+     * Processor of batches of query lines.
+     *
+     * @author Sergey Esipenko
+     */
+    public interface BatchProcessor {
+
+        /**
+         * Answers queries of batch. The batch holds whole lines (the last
+         * line of input may lack the separator).
+         *
+         * @param batch
+         *            array with query lines
+         * @param length
+         *            number of bytes in the batch
+         * @return answers in order of queries
+         */
+        byte[] process(final byte[] batch, final int length);
+    }
+
+    /**
+     * Tokenizer of batch: splits bytes by whitespace.
+     *
+     * @author Sergey Esipenko
+     */
+    public static final class Tokenizer {
+
+        /**
+         * Array with tokens.
+         */
+        private final byte[] bytes;
+
+        /**
+         * End of the content (exclusive).
+         */
+        private final int limit;
+
+        /**
+         * Current position.
+         */
+        private int position;
+
+        /**
+         * Beginning of the last token (inclusive).
+         */
+        private int tokenBegin;
+
+        /**
+         * Constructor takes batch.
+         *
+         * @param batch
+         *            array with tokens
+         * @param length
+         *            number of bytes in the batch
+         */
+        public Tokenizer(final byte[] batch, final int length) {
+            this.bytes = batch;
+            this.limit = length;
+        }
+
+        /**
+         * Moves to the next token.
+         *
+         * @return true if there is a token; false at the end of the batch
+         */
+        public boolean next() {
+            while (position < limit && isSpace(bytes[position])) {
+                position++;
+            }
+            tokenBegin = position;
+            while (position < limit && !isSpace(bytes[position])) {
+                position++;
+            }
+            return tokenBegin < position;
+        }
+
+        /**
+         * Returns the current token as string.
+         *
+         * @return the token decoded from UTF-8
+         */
+        public String token() {
+            return new String(bytes, tokenBegin, position - tokenBegin,
+                    CHARSET);
+        }
+
+        /**
+         * Parses the current token as non-negative decimal number.
+         *
+         * @return parsed number
+         */
+        public int intToken() {
+            long value = 0;
+            for (int i = tokenBegin; i < position; i++) {
+                final int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Wrong number "
+                            + token());
+                }
+                value = value * 10 + digit;
+            }
+            if (value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Wrong number " + token());
+            }
+            return (int) value;
+        }
+
+        /**
+         * Checks whether byte is whitespace. Bytes of multibyte UTF-8
+         * characters are negative, they belong to tokens.
+         *
+         * @param b
+         *            the byte
+         * @return true for whitespace and control characters
+         */
+        private static boolean isSpace(final byte b) {
+            return b >= 0 && b <= ' ';
+        }
+
+        /**
+         * Moves to the next token and requires it.
+         */
+        public void require() {
+            if (!next()) {
+                throw new IllegalArgumentException("Query is incomplete");
+            }
+        }
+    }
+}
@@ -2,6 +2,12 @@
  * The SAP class is designed to process shortest ancestral paths (SAP) queries
  * like length(a, b) to find length of SAP and ancestor(a, b) to find a common
  * ancestor which is laying on SAP.
+ * <p>
+ * By default this class is thread-safe: queries may be performed from several
+ * threads simultaneously, each thread uses its own search state.
+ * <p>
+ * Queries for pairs may be reported to a SapQueryListener (e.g. SapMetrics).
+ * Without listener the only overhead is reading of a volatile field.
  *
  * @author Sergey Esipenko
  */
@@ -10,13 +16,23 @@ public class SAP {
     /**
      * Digraph where all queries are performed.
      */
-    private final Digraph digraph;
+    private final CompactDigraph digraph;
 
     /**
      * Helper object for performing queries.
      */
     private final SapFinder sapBfs;
 
+    /**
+     * Helper object for queries sharing one side.
+     */
+    private final MultiSourceSap multiSourceSap;
+
+    /**
+     * Listener of queries; null if instrumentation is disabled.
+     */
+    private volatile SapQueryListener queryListener;
+
     /**
      * Constructor takes a digraph (not necessarily a DAG).
      *
@@ -24,8 +40,23 @@ public class SAP {
      *            graph where all queries are performed
      */
     public SAP(final Digraph directedGraph) {
-        this.digraph = new Digraph(directedGraph);
-        this.sapBfs = new TwoWaySapFinder(this.digraph);
+        this(directedGraph, ThreadLocalSapFinder
+                .factory(TwoWaySapFinder.FACTORY));
+    }
+
+    /**
+     * Constructor takes a digraph and a factory of helper object.
+     *
+     * @param directedGraph
+     *            graph where all queries are performed
+     * @param factory
+     *            factory of helper object for performing queries (created
+     *            objects must be thread-safe if SAP is shared between threads)
+     */
+    public SAP(final Digraph directedGraph, final SapFinderFactory factory) {
+        this.digraph = new CompactDigraph(directedGraph);
+        this.sapBfs = factory.create(this.digraph);
+        this.multiSourceSap = new MultiSourceSap(this.digraph);
     }
 
     /**
@@ -40,11 +71,25 @@ public class SAP {
      *         such path.
      */
     public int length(final int v, final int w) {
-        SapAnswer sapAnswer = sap(v, w);
-        if (sapAnswer == null) {
-            return -1;
-        }
-        return sapAnswer.getLength();
+        return SapAnswer.unpackLength(packedSap(v, w));
+    }
+
+    /**
+     * Calculates the length of shortest ancestral path between v and w if it
+     * doesn't exceed maxLength. The search stops as soon as longer paths
+     * remain only, so the query is cheap for distant vertices.
+     *
+     * @param v
+     *            first vertex
+     * @param w
+     *            second vertex
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return the length of shortest ancestral path between v and w; -1 if no
+     *         such path or it's longer than maxLength
+     */
+    public int length(final int v, final int w, final int maxLength) {
+        return SapAnswer.unpackLength(packedSap(v, w, maxLength));
     }
 
     /**
@@ -59,11 +104,7 @@ public class SAP {
      *         ancestral path; -1 if no such path.
      */
     public int ancestor(final int v, final int w) {
-        SapAnswer sapAnswer = sap(v, w);
-        if (sapAnswer == null) {
-            return -1;
-        }
-        return sapAnswer.getAncestor();
+        return SapAnswer.unpackAncestor(packedSap(v, w));
     }
 
     /**
@@ -78,11 +119,26 @@ public class SAP {
      *         any vertex in w; -1 if no such path.
      */
     public int length(final Iterable<Integer> v, final Iterable<Integer> w) {
-        SapAnswer sapAnswer = sap(v, w);
-        if (sapAnswer == null) {
-            return -1;
-        }
-        return sapAnswer.getLength();
+        return SapAnswer.unpackLength(packedSap(v, w));
+    }
+
+    /**
+     * Calculates the length of shortest ancestral path between any vertex in v
+     * and any vertex in w if it doesn't exceed maxLength.
+     *
+     * @param v
+     *            first vertex
+     * @param w
+     *            second vertex
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return the length of shortest ancestral path between any vertex in v and
+     *         any vertex in w; -1 if no such path or it's longer than
+     *         maxLength
+     */
+    public int length(final Iterable<Integer> v, final Iterable<Integer> w,
+            final int maxLength) {
+        return SapAnswer.unpackLength(packedSap(v, w, maxLength));
     }
 
     /**
@@ -97,28 +153,140 @@ public class SAP {
      *         -1 if no such path.
      */
     public int ancestor(final Iterable<Integer> v, final Iterable<Integer> w) {
-        SapAnswer sapAnswer = sap(v, w);
-        if (sapAnswer == null) {
-            return -1;
+        return SapAnswer.unpackAncestor(packedSap(v, w));
+    }
+
+    /**
+     * Performs SAP queries for pairs (v[i], w[i]) in parallel. Each query is
+     * processed by a single search, both length and ancestor are stored into
+     * given arrays (-1 if there is no such path).
+     *
+     * @param v
+     *            first vertices of pairs
+     * @param w
+     *            second vertices of pairs
+     * @param lengths
+     *            array for storing lengths of shortest ancestral paths
+     * @param ancestors
+     *            array for storing common ancestors participating in shortest
+     *            ancestral paths
+     */
+    public void batchSap(final int[] v, final int[] w, final int[] lengths,
+            final int[] ancestors) {
+        Utils.check(v.length == w.length && v.length == lengths.length
+                && v.length == ancestors.length, new IllegalArgumentException(
+                "Arrays must have the same length"));
+        for (int i = 0; i < v.length; i++) {
+            checkIndex(v[i]);
+            checkIndex(w[i]);
         }
-        return sapAnswer.getAncestor();
+        ParallelRangeTask.invoke(new ParallelRangeTask.RangeProcessor() {
+            @Override
+            public void process(final int from, final int to) {
+                for (int i = from; i < to; i++) {
+                    final long packed = packedSap(v[i], w[i]);
+                    lengths[i] = SapAnswer.unpackLength(packed);
+                    ancestors[i] = SapAnswer.unpackAncestor(packed);
+                }
+            }
+        }, v.length);
     }
 
     /**
-     * For unit testing of this class.
+     * Performs SAP queries for pairs (v, w[i]) by bit-parallel multi-source
+     * BFS: one traversal serves 64 queries. Both length and ancestor are
+     * stored into given arrays (-1 if there is no such path).
+     *
+     * @param v
+     *            common vertex of pairs
+     * @param w
+     *            second vertices of pairs
+     * @param lengths
+     *            array for storing lengths of shortest ancestral paths
+     * @param ancestors
+     *            array for storing common ancestors participating in shortest
+     *            ancestral paths
+     */
+    public void batchSap(final int v, final int[] w, final int[] lengths,
+            final int[] ancestors) {
+        checkIndex(v);
+        final int[] begins = new int[w.length];
+        final int[] ends = new int[w.length];
+        for (int i = 0; i < w.length; i++) {
+            checkIndex(w[i]);
+            begins[i] = i;
+            ends[i] = i + 1;
+        }
+        multiSourceSap.sap(new int[] {v}, 0, 1, w, begins, ends, lengths,
+                ancestors);
+    }
+
+    /**
+     * Returns listener of queries.
+     *
+     * @return the listener; null if instrumentation is disabled
+     */
+    public SapQueryListener getQueryListener() {
+        return queryListener;
+    }
+
+    /**
+     * Sets listener of queries. Queries for pairs of vertices and pairs of
+     * sets are reported, multi-source batches are not.
+     *
+     * @param listener
+     *            the listener; null disables instrumentation
+     */
+    public void setQueryListener(final SapQueryListener listener) {
+        this.queryListener = listener;
+    }
+
+    /**
+     * For unit testing of this class. In stream mode queries are answered by
+     * QueryPipeline: one pair per line, answers in the same format and order.
      *
      * @param args
-     *            command line arguments (digraph file)
+     *            command line arguments (digraph file, optional "stream" and
+     *            number of workers)
      */
     public static void main(final String[] args) {
         In in = new In(args[0]);
         Digraph graph = new Digraph(in);
-        SAP sap = new SAP(graph);
+        final SAP sap = new SAP(graph);
+        if (args.length > 1 && "stream".equals(args[1])) {
+            int workers = Runtime.getRuntime().availableProcessors();
+            if (args.length > 2) {
+                workers = Integer.parseInt(args[2]);
+            }
+            QueryPipeline.run(System.in, System.out,
+                    new QueryPipeline.BatchProcessor() {
+                @Override
+                public byte[] process(final byte[] batch, final int length) {
+                    final QueryPipeline.Tokenizer tokens = new QueryPipeline
+                            .Tokenizer(batch, length);
+                    final StringBuilder answers = new StringBuilder();
+                    while (tokens.next()) {
+                        final int v = tokens.intToken();
+                        tokens.require();
+                        final long packed = sap.packedSap(v,
+                                tokens.intToken());
+                        answers.append("length = ")
+                                .append(SapAnswer.unpackLength(packed))
+                                .append(", ancestor = ")
+                                .append(SapAnswer.unpackAncestor(packed))
+                                .append('\n');
+                    }
+                    return answers.toString().getBytes(QueryPipeline.CHARSET);
+                }
+            }, workers);
+            return;
+        }
         while (!StdIn.isEmpty()) {
             int v = StdIn.readInt();
             int w = StdIn.readInt();
-            int length = sap.length(v, w);
-            int ancestor = sap.ancestor(v, w);
+            long packed = sap.packedSap(v, w);
+            int length = SapAnswer.unpackLength(packed);
+            int ancestor = SapAnswer.unpackAncestor(packed);
             StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
         }
     }
@@ -130,13 +298,34 @@ public class SAP {
      *            first vertex
      * @param w
      *            second vertex
-     * @return answer for the query stored in SapAnswer object
+     * @return answer for the query packed by SapAnswer.pack()
      */
-    private SapAnswer sap(final int v, final int w) {
+    private long packedSap(final int v, final int w) {
+        return packedSap(v, w, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Performs bounded SAP query for two given vertices.
+     *
+     * @param v
+     *            first vertex
+     * @param w
+     *            second vertex
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack()
+     */
+    private long packedSap(final int v, final int w, final int maxLength) {
         checkIndex(v);
         checkIndex(w);
-        SapAnswer sapAnswer = sapBfs.sap(v, w);
-        return sapAnswer;
+        final SapQueryListener listener = queryListener;
+        if (listener == null) {
+            return sapBfs.packedSap(v, w, maxLength);
+        }
+        final long start = System.nanoTime();
+        final long packed = sapBfs.packedSap(v, w, maxLength);
+        Utils.reportQuery(listener, sapBfs, start);
+        return packed;
     }
 
     /**
@@ -146,13 +335,36 @@ public class SAP {
      *            first set of vertices
      * @param w
      *            second set of vertices
-     * @return answer for the query stored in SapAnswer object
+     * @return answer for the query packed by SapAnswer.pack()
      */
-    private SapAnswer sap(final Iterable<Integer> v, final Iterable<Integer> w) {
+    private long packedSap(final Iterable<Integer> v,
+            final Iterable<Integer> w) {
+        return packedSap(v, w, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Performs bounded SAP query for two given sets of vertices.
+     *
+     * @param v
+     *            first set of vertices
+     * @param w
+     *            second set of vertices
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack()
+     */
+    private long packedSap(final Iterable<Integer> v,
+            final Iterable<Integer> w, final int maxLength) {
         checkIndexes(v);
         checkIndexes(w);
-        SapAnswer sapAnswer = sapBfs.sap(v, w);
-        return sapAnswer;
+        final SapQueryListener listener = queryListener;
+        if (listener == null) {
+            return sapBfs.packedSap(v, w, maxLength);
+        }
+        final long start = System.nanoTime();
+        final long packed = sapBfs.packedSap(v, w, maxLength);
+        Utils.reportQuery(listener, sapBfs, start);
+        return packed;
     }
 
     /**
@@ -176,7 +388,8 @@ public class SAP {
      *            to test
      */
     private void checkIndex(final int index) {
-        Utils.check(0 <= index && index < digraph.V(),
-                new IndexOutOfBoundsException());
+        if (index < 0 || index >= digraph.V()) {
+            throw new IndexOutOfBoundsException();
+        }
     }
 }
@@ -1,11 +1,31 @@
 /**
  * The SapAnswer class is designed for storing answer for sap query (length and
  * ancestor index).
+ * <p>
+ * Answers may also be packed into a single long value (length in the high
+ * half, ancestor in the low half). Packed answers are used in the hot path to
+ * avoid object allocation per query.
  *
  * @author Sergey Esipenko
  */
 public class SapAnswer {
 
+    /**
+     * Packed answer for query without ancestral path (length and ancestor are
+     * both -1).
+     */
+    public static final long NO_ANSWER = pack(-1, -1);
+
+    /**
+     * Number of bits for storing ancestor in packed answer.
+     */
+    private static final int ANCESTOR_BITS = 32;
+
+    /**
+     * Mask for extracting ancestor from packed answer.
+     */
+    private static final long ANCESTOR_MASK = (1L << ANCESTOR_BITS) - 1;
+
     /**
      * Length of SAP.
      */
@@ -44,4 +64,71 @@ public class SapAnswer {
     public final int getAncestor() {
         return mAncestor;
     }
+
+    /**
+     * Packs length and ancestor index into a single long value.
+     *
+     * @param length
+     *            length of SAP
+     * @param ancestor
+     *            ancestor's index
+     * @return packed answer
+     */
+    public static long pack(final int length, final int ancestor) {
+        return ((long) length << ANCESTOR_BITS) | (ancestor & ANCESTOR_MASK);
+    }
+
+    /**
+     * Extracts length of SAP from packed answer.
+     *
+     * @param packed
+     *            packed answer
+     * @return length of SAP; -1 if there is no such path
+     */
+    public static int unpackLength(final long packed) {
+        return (int) (packed >> ANCESTOR_BITS);
+    }
+
+    /**
+     * Extracts ancestor's index from packed answer.
+     *
+     * @param packed
+     *            packed answer
+     * @return ancestor's index; -1 if there is no such path
+     */
+    public static int unpackAncestor(final long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * Drops packed answer if its path is too long.
+     *
+     * @param packed
+     *            packed answer
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return the answer if its length is at most maxLength; NO_ANSWER
+     *         otherwise
+     */
+    public static long bound(final long packed, final int maxLength) {
+        if (unpackLength(packed) > maxLength) {
+            return NO_ANSWER;
+        }
+        return packed;
+    }
+
+    /**
+     * Converts packed answer to SapAnswer object.
+     *
+     * @param packed
+     *            packed answer
+     * @return answer stored in the SapAnswer object; null if there is no
+     *         ancestral path
+     */
+    public static SapAnswer unpack(final long packed) {
+        if (packed == NO_ANSWER) {
+            return null;
+        }
+        return new SapAnswer(unpackLength(packed), unpackAncestor(packed));
+    }
 }
@@ -0,0 +1,366 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The SapCache class is a bounded cache of SAP answers keyed by unordered
+ * pairs (answer for (a, b) is also an answer for (b, a)).
+ * <p>
+ * This implementation splits the cache into segments by key hash. Each
+ * segment is a LinkedHashMap guarded by its own lock, so threads working with
+ * different segments don't block each other. When a segment is full, its
+ * eldest entry is evicted according to the eviction policy. Each segment also
+ * keeps its keys grouped by element, so answers for pairs containing given
+ * elements are dropped without scanning the whole cache.
+ *
+ * @author Sergey Esipenko
+ * @param <T>
+ *            type of pair elements
+ */
+public class SapCache<T> {
+
+    /**
+     * Default number of segments.
+     */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /**
+     * Segments of the cache.
+     */
+    private final Segment<T>[] segments;
+
+    /**
+     * Constructor takes capacity and eviction policy. Default number of
+     * segments is used.
+     *
+     * @param capacity
+     *            maximal number of stored answers
+     * @param policy
+     *            eviction policy
+     */
+    public SapCache(final int capacity, final EvictionPolicy policy) {
+        this(capacity, policy, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Constructor takes capacity, eviction policy and number of segments.
+     * Capacity is split evenly between segments (rounded up).
+     *
+     * @param capacity
+     *            maximal number of stored answers
+     * @param policy
+     *            eviction policy
+     * @param segmentsNumber
+     *            number of independently locked segments
+     */
+    @SuppressWarnings("unchecked")
+    public SapCache(final int capacity, final EvictionPolicy policy,
+            final int segmentsNumber) {
+        Utils.check(capacity > 0 && segmentsNumber > 0,
+                new IllegalArgumentException(
+                        "Capacity and number of segments must be positive"));
+        final int segmentsCount = Math.min(capacity, segmentsNumber);
+        final int segmentCapacity = (capacity + segmentsCount - 1)
+                / segmentsCount;
+        this.segments = (Segment<T>[]) new Segment<?>[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            segments[i] = new Segment<T>(segmentCapacity, policy);
+        }
+    }
+
+    /**
+     * Returns cached answer for pair (a, b) or (b, a).
+     *
+     * @param a
+     *            first element
+     * @param b
+     *            second element
+     * @return answer packed by SapAnswer.pack(); null if answer isn't cached
+     */
+    public final Long get(final T a, final T b) {
+        final Pair<T> key = new Pair<T>(a, b);
+        final Segment<T> segment = segmentFor(key);
+        synchronized (segment) {
+            final Long packed = segment.get(key);
+            if (packed == null) {
+                segment.misses++;
+            } else {
+                segment.hits++;
+            }
+            return packed;
+        }
+    }
+
+    /**
+     * Stores answer for pair (a, b).
+     *
+     * @param a
+     *            first element
+     * @param b
+     *            second element
+     * @param packed
+     *            answer packed by SapAnswer.pack()
+     */
+    public final void put(final T a, final T b, final long packed) {
+        final Pair<T> key = new Pair<T>(a, b);
+        final Segment<T> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.store(key, packed);
+        }
+    }
+
+    /**
+     * Removes all cached answers. Counters are not reset.
+     */
+    public final void clear() {
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes cached answers for pairs containing any of given elements. It
+     * takes time proportional to the number of given elements and removed
+     * answers.
+     *
+     * @param elements
+     *            set of elements
+     */
+    public final void removeAll(final Set<T> elements) {
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                for (T element : elements) {
+                    segment.removeElement(element);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns number of cached answers.
+     *
+     * @return number of cached answers
+     */
+    public final int size() {
+        int size = 0;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns number of successful lookups.
+     *
+     * @return number of hits
+     */
+    public final long hits() {
+        long hits = 0;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns number of failed lookups.
+     *
+     * @return number of misses
+     */
+    public final long misses() {
+        long misses = 0;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Finds segment for given key.
+     *
+     * @param key
+     *            the key
+     * @return segment which stores the key
+     */
+    private Segment<T> segmentFor(final Pair<T> key) {
+        final int h = key.hashCode();
+        final int spread = h ^ (h >>> 16);
+        return segments[(spread & Integer.MAX_VALUE) % segments.length];
+    }
+
+    /**
+     * Eviction policies.
+     *
+     * @author Sergey Esipenko
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evicts least recently used answer.
+         */
+        LRU,
+
+        /**
+         * Evicts least recently stored answer.
+         */
+        FIFO
+    }
+
+    /**
+     * Segment of the cache. All accesses must be synchronized on segment.
+     *
+     * @author Sergey Esipenko
+     * @param <T>
+     *            type of pair elements
+     */
+    private static final class Segment<T> extends
+            LinkedHashMap<Pair<T>, Long> {
+
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Load factor of the map.
+         */
+        private static final float LOAD_FACTOR = 0.75f;
+
+        /**
+         * Maximal number of stored answers.
+         */
+        private final int capacity;
+
+        /**
+         * Stored keys grouped by their elements.
+         */
+        private final Map<T, Set<Pair<T>>> keysByElement =
+                new HashMap<T, Set<Pair<T>>>();
+
+        /**
+         * Number of successful lookups.
+         */
+        private long hits;
+
+        /**
+         * Number of failed lookups.
+         */
+        private long misses;
+
+        /**
+         * Constructor takes capacity and eviction policy.
+         *
+         * @param segmentCapacity
+         *            maximal number of stored answers
+         * @param policy
+         *            eviction policy
+         */
+        Segment(final int segmentCapacity, final EvictionPolicy policy) {
+            super((int) (segmentCapacity / LOAD_FACTOR) + 1, LOAD_FACTOR,
+                    policy == EvictionPolicy.LRU);
+            this.capacity = segmentCapacity;
+        }
+
+        /**
+         * Stores answer and registers a new key by its elements.
+         *
+         * @param key
+         *            pair of elements
+         * @param packed
+         *            answer packed by SapAnswer.pack()
+         */
+        void store(final Pair<T> key, final long packed) {
+            if (put(key, packed) == null) {
+                register(key.getFirst(), key);
+                register(key.getSecond(), key);
+            }
+        }
+
+        /**
+         * Removes answers for pairs containing element.
+         *
+         * @param element
+         *            the element
+         */
+        void removeElement(final T element) {
+            final Set<Pair<T>> keys = keysByElement.remove(element);
+            if (keys != null) {
+                for (Pair<T> key : keys) {
+                    remove(key);
+                    unregister(key);
+                }
+            }
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            keysByElement.clear();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+                final Map.Entry<Pair<T>, Long> eldest) {
+            if (size() > capacity) {
+                unregister(eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Adds key to the group of element.
+         *
+         * @param element
+         *            element of the key
+         * @param key
+         *            the key
+         */
+        private void register(final T element, final Pair<T> key) {
+            Set<Pair<T>> keys = keysByElement.get(element);
+            if (keys == null) {
+                keys = new HashSet<Pair<T>>();
+                keysByElement.put(element, keys);
+            }
+            keys.add(key);
+        }
+
+        /**
+         * Removes key from groups of its elements.
+         *
+         * @param key
+         *            the key
+         */
+        private void unregister(final Pair<T> key) {
+            unregister(key.getFirst(), key);
+            unregister(key.getSecond(), key);
+        }
+
+        /**
+         * Removes key from the group of element.
+         *
+         * @param element
+         *            element of the key
+         * @param key
+         *            the key
+         */
+        private void unregister(final T element, final Pair<T> key) {
+            final Set<Pair<T>> keys = keysByElement.get(element);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByElement.remove(element);
+                }
+            }
+        }
+    }
+}
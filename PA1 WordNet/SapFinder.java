@@ -26,4 +26,159 @@ public interface SapFinder {
      */
     SapAnswer sap(final Iterable<Integer> first,
             final Iterable<Integer> second);
+
+    /**
+     * Performs a SAP query for two vertices without allocating answer object.
+     *
+     * @param first
+     *            first vertex
+     * @param second
+     *            second vertex
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path
+     */
+    long packedSap(final int first, final int second);
+
+    /**
+     * Performs a SAP query for two set of vertices without allocating answer
+     * object.
+     *
+     * @param first
+     *            first set of vertices
+     * @param second
+     *            second set of vertices
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path
+     */
+    long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second);
+
+    /**
+     * Performs a SAP query for two arrays of vertices without allocating
+     * answer object.
+     *
+     * @param first
+     *            first set of vertices
+     * @param second
+     *            second set of vertices
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path
+     */
+    long packedSap(final int[] first, final int[] second);
+
+    /**
+     * Performs a SAP query for two ranges of arrays of vertices without
+     * allocating answer object.
+     *
+     * @param first
+     *            array with the first set of vertices
+     * @param firstFrom
+     *            beginning of the first set in array (inclusive)
+     * @param firstTo
+     *            end of the first set in array (exclusive)
+     * @param second
+     *            array with the second set of vertices
+     * @param secondFrom
+     *            beginning of the second set in array (inclusive)
+     * @param secondTo
+     *            end of the second set in array (exclusive)
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path
+     */
+    long packedSap(final int[] first, final int firstFrom, final int firstTo,
+            final int[] second, final int secondFrom, final int secondTo);
+
+    /**
+     * Performs a bounded SAP query for two vertices: the search stops as soon
+     * as it's clear that there is no ancestral path of length at most
+     * maxLength.
+     *
+     * @param first
+     *            first vertex
+     * @param second
+     *            second vertex
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path of length at
+     *         most maxLength
+     */
+    long packedSap(final int first, final int second, final int maxLength);
+
+    /**
+     * Performs a bounded SAP query for two set of vertices.
+     *
+     * @param first
+     *            first set of vertices
+     * @param second
+     *            second set of vertices
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path of length at
+     *         most maxLength
+     */
+    long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second, final int maxLength);
+
+    /**
+     * Performs a bounded SAP query for two ranges of arrays of vertices.
+     *
+     * @param first
+     *            array with the first set of vertices
+     * @param firstFrom
+     *            beginning of the first set in array (inclusive)
+     * @param firstTo
+     *            end of the first set in array (exclusive)
+     * @param second
+     *            array with the second set of vertices
+     * @param secondFrom
+     *            beginning of the second set in array (inclusive)
+     * @param secondTo
+     *            end of the second set in array (exclusive)
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack();
+     *         SapAnswer.NO_ANSWER if there is no ancestral path of length at
+     *         most maxLength
+     */
+    long packedSap(final int[] first, final int firstFrom, final int firstTo,
+            final int[] second, final int secondFrom, final int secondTo,
+            final int maxLength);
+
+    /**
+     * Does this object stay valid when the digraph grows? Such objects read
+     * the digraph on every query or update their precomputed data when they
+     * are notified by vertexAdded() and edgeAdded(); others can't be used with
+     * a growing digraph.
+     *
+     * @return true if vertices and edges may be added to the digraph
+     */
+    boolean supportsGrowth();
+
+    /**
+     * Notifies this object that a vertex was added to the digraph together
+     * with its edges (the vertex has no incoming edges). It is called for
+     * objects which support growth only and mustn't be called concurrently
+     * with queries.
+     *
+     * @param v
+     *            the new vertex
+     */
+    void vertexAdded(final int v);
+
+    /**
+     * Notifies this object that an edge was added to the digraph. Only the
+     * tail of the edge and vertices it is reachable from get new ancestors.
+     * It is called for objects which support growth only and mustn't be
+     * called concurrently with queries.
+     *
+     * @param from
+     *            tail of the new edge
+     * @param to
+     *            head of the new edge
+     * @param affected
+     *            the tail and all vertices it is reachable from
+     */
+    void edgeAdded(final int from, final int to, final int[] affected);
 }
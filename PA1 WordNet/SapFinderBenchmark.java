@@ -0,0 +1,330 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The SapFinderBenchmark class measures SapFinder implementations on synthetic
+ * WordNet-shaped DAGs and (optionally) on the real WordNet. For each finder
+ * and each kind of query (single vertices, sets of vertices, unreachable
+ * vertices) it reports throughput, latency percentiles and allocation rate.
+ * <p>
+ * This implementation is a self-contained harness: each scenario is warmed up
+ * and then measured for fixed time, latency of each query is measured
+ * separately, allocations are counted by the thread MX bean (if the JVM
+ * supports it). Results of queries are folded into a checksum, so the JIT
+ * can't eliminate them.
+ *
+ * @author Sergey Esipenko
+ */
+public final class SapFinderBenchmark {
+
+    /**
+     * Number of vertices of synthetic DAG.
+     */
+    private static final int SYNTHETIC_VERTICES = 80000;
+
+    /**
+     * Probability of extra hypernym of synthetic vertex.
+     */
+    private static final double EXTRA_PARENT_PROBABILITY = 0.02;
+
+    /**
+     * Maximal size of vertex set in multi-vertex queries.
+     */
+    private static final int MAX_SET_SIZE = 4;
+
+    /**
+     * Number of pregenerated queries of each kind.
+     */
+    private static final int QUERIES = 4096;
+
+    /**
+     * Warmup time of each scenario in nanoseconds.
+     */
+    private static final long WARMUP_NANOS = 1000000000L;
+
+    /**
+     * Measurement time of each scenario in nanoseconds.
+     */
+    private static final long MEASUREMENT_NANOS = 2000000000L;
+
+    /**
+     * Maximal number of recorded latencies per scenario.
+     */
+    private static final int MAX_RECORDED_LATENCIES = 1 << 22;
+
+    /**
+     * Random seed (benchmark is reproducible).
+     */
+    private static final long SEED = 20140310L;
+
+    /**
+     * Reported percentiles.
+     */
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    /**
+     * Checksum of all answers.
+     */
+    private static long checksum;
+
+    /**
+     * Private constructor. Prevents from instancing.
+     */
+    private SapFinderBenchmark() {
+    }
+
+    /**
+     * Runs benchmark.
+     *
+     * @param args
+     *            command line arguments (optional synsets and hypernyms files
+     *            of the real WordNet)
+     */
+    public static void main(final String[] args) {
+        final Random random = new Random(SEED);
+        final String[] names = {"naive", "two-way", "ancestor-index", "lca"};
+        final SapFinderFactory[] factories = {NaiveSapFinder.FACTORY,
+                TwoWaySapFinder.FACTORY, AncestorIndexSapFinder.FACTORY,
+                LcaSapFinder.FACTORY};
+        StdOut.printf("%-10s %-15s %-8s %12s %9s %9s %9s %9s %10s\n",
+                "graph", "finder", "query", "ops/s", "p50,us", "p90,us",
+                "p99,us", "p99.9,us", "bytes/op");
+        final CompactDigraph synthetic = syntheticDag(SYNTHETIC_VERTICES, 1,
+                random);
+        final CompactDigraph forest = syntheticDag(SYNTHETIC_VERTICES, 2,
+                random);
+        for (int f = 0; f < factories.length; f++) {
+            run("synthetic", names[f], factories[f], synthetic, 1, random);
+            run("forest", names[f], factories[f], forest, 2, random);
+        }
+        if (args.length >= 2) {
+            final CompactDigraph real = new WordNetLoader(args[0], args[1])
+                    .getDigraph();
+            for (int f = 0; f < factories.length; f++) {
+                run("wordnet", names[f], factories[f], real, 1, random);
+            }
+        }
+        StdOut.println("checksum = " + checksum);
+    }
+
+    /**
+     * Runs all kinds of queries for one finder and one graph.
+     *
+     * @param graphName
+     *            name of graph for report
+     * @param finderName
+     *            name of finder for report
+     * @param factory
+     *            factory of finder
+     * @param digraph
+     *            digraph for queries
+     * @param components
+     *            number of components of digraph (vertex v belongs to
+     *            component v % components)
+     * @param random
+     *            random generator
+     */
+    private static void run(final String graphName, final String finderName,
+            final SapFinderFactory factory, final CompactDigraph digraph,
+            final int components, final Random random) {
+        final SapFinder finder = factory.create(digraph);
+        final int[][] first = new int[QUERIES][];
+        final int[][] second = new int[QUERIES][];
+        if (components == 1) {
+            generate(first, second, digraph.V(), 1, 1, random);
+            measure(graphName, finderName, "single", finder, first, second);
+            generate(first, second, digraph.V(), 1, MAX_SET_SIZE, random);
+            measure(graphName, finderName, "multi", finder, first, second);
+        } else {
+            generate(first, second, digraph.V(), components, 1, random);
+            measure(graphName, finderName, "unreach", finder, first, second);
+        }
+    }
+
+    /**
+     * Measures one scenario and prints report line.
+     *
+     * @param graphName
+     *            name of graph for report
+     * @param finderName
+     *            name of finder for report
+     * @param queryName
+     *            name of query kind for report
+     * @param finder
+     *            finder to measure
+     * @param first
+     *            first vertex sets of queries
+     * @param second
+     *            second vertex sets of queries
+     */
+    private static void measure(final String graphName,
+            final String finderName, final String queryName,
+            final SapFinder finder, final int[][] first, final int[][] second) {
+        final long[] latencies = new long[MAX_RECORDED_LATENCIES];
+        runFor(WARMUP_NANOS, finder, first, second, latencies);
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        final int count = runFor(MEASUREMENT_NANOS, finder, first, second,
+                latencies);
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - allocatedBefore;
+        final int recorded = Math.min(count, latencies.length);
+        Arrays.sort(latencies, 0, recorded);
+        StdOut.printf("%-10s %-15s %-8s %12.0f", graphName, finderName,
+                queryName, count * 1e9 / elapsed);
+        for (double percentile : PERCENTILES) {
+            final int index = (int) Math.ceil(percentile / 100.0 * recorded);
+            StdOut.printf(" %9.2f", latencies[Math.max(0, index - 1)] / 1e3);
+        }
+        if (allocatedBefore < 0) {
+            StdOut.printf(" %10s\n", "n/a");
+        } else {
+            StdOut.printf(" %10.1f\n", (double) allocated / count);
+        }
+    }
+
+    /**
+     * Performs queries in a loop for given time.
+     *
+     * @param nanos
+     *            time to run
+     * @param finder
+     *            finder to call
+     * @param first
+     *            first vertex sets of queries
+     * @param second
+     *            second vertex sets of queries
+     * @param latencies
+     *            array for latencies of the first queries (preallocated, so
+     *            recording doesn't allocate)
+     * @return number of performed queries
+     */
+    private static int runFor(final long nanos, final SapFinder finder,
+            final int[][] first, final int[][] second, final long[] latencies) {
+        final long deadline = System.nanoTime() + nanos;
+        long sum = 0;
+        int count = 0;
+        long now = System.nanoTime();
+        while (now < deadline) {
+            final int q = count % first.length;
+            final long packed;
+            if (first[q].length == 1 && second[q].length == 1) {
+                packed = finder.packedSap(first[q][0], second[q][0]);
+            } else {
+                packed = finder.packedSap(first[q], second[q]);
+            }
+            sum += packed;
+            final long finished = System.nanoTime();
+            if (count < latencies.length) {
+                latencies[count] = finished - now;
+            }
+            now = finished;
+            count++;
+        }
+        checksum += sum;
+        return count;
+    }
+
+    /**
+     * Generates random queries.
+     *
+     * @param first
+     *            array for first vertex sets
+     * @param second
+     *            array for second vertex sets
+     * @param vertices
+     *            number of vertices
+     * @param components
+     *            number of components; if it's greater than 1 the sets of
+     *            each query are taken from different components
+     * @param maxSetSize
+     *            maximal size of vertex set
+     * @param random
+     *            random generator
+     */
+    private static void generate(final int[][] first, final int[][] second,
+            final int vertices, final int components, final int maxSetSize,
+            final Random random) {
+        for (int q = 0; q < first.length; q++) {
+            first[q] = randomSet(vertices, components, 0, maxSetSize, random);
+            second[q] = randomSet(vertices, components, components - 1,
+                    maxSetSize, random);
+        }
+    }
+
+    /**
+     * Generates random vertex set from given component.
+     *
+     * @param vertices
+     *            number of vertices
+     * @param components
+     *            number of components
+     * @param component
+     *            component of vertices
+     * @param maxSetSize
+     *            maximal size of set
+     * @param random
+     *            random generator
+     * @return array of vertices
+     */
+    private static int[] randomSet(final int vertices, final int components,
+            final int component, final int maxSetSize, final Random random) {
+        final int[] set = new int[1 + random.nextInt(maxSetSize)];
+        for (int i = 0; i < set.length; i++) {
+            set[i] = random.nextInt(vertices / components) * components
+                    + component;
+        }
+        return set;
+    }
+
+    /**
+     * Generates WordNet-shaped DAG: vertices 0 ... components - 1 are roots,
+     * each other vertex has one random hypernym among previous vertices of its
+     * component (so the depth is logarithmic, like in WordNet) and sometimes
+     * an extra one.
+     *
+     * @param vertices
+     *            number of vertices
+     * @param components
+     *            number of components (vertex v belongs to v % components)
+     * @param random
+     *            random generator
+     * @return generated DAG
+     */
+    private static CompactDigraph syntheticDag(final int vertices,
+            final int components, final Random random) {
+        final Digraph dag = new Digraph(vertices);
+        for (int v = components; v < vertices; v++) {
+            final int steps = v / components;
+            final int parent = v - components * (1 + random.nextInt(steps));
+            dag.addEdge(v, parent);
+            if (random.nextDouble() < EXTRA_PARENT_PROBABILITY) {
+                final int extra = v - components * (1 + random.nextInt(steps));
+                if (extra != parent) {
+                    dag.addEdge(v, extra);
+                }
+            }
+        }
+        return new CompactDigraph(dag);
+    }
+
+    /**
+     * Returns number of bytes allocated by the current thread.
+     *
+     * @return number of allocated bytes; -1 if it isn't supported
+     */
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sunBean =
+                    (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread()
+                        .getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Interface for SapFinder factories. Factories are used when several
+ * independent SapFinder objects are needed for the same digraph (e.g. one
+ * object per thread).
+ *
+ * @author Sergey Esipenko
+ */
+public interface SapFinderFactory {
+    /**
+     * Creates a new SapFinder object for given digraph.
+     *
+     * @param digraph
+     *            digraph for SAP processing
+     * @return new SapFinder object
+     */
+    SapFinder create(final CompactDigraph digraph);
+
+    /**
+     * Do objects created by this factory support growth of the digraph (see
+     * SapFinder.supportsGrowth())? The answer is known without creating an
+     * object.
+     *
+     * @return true if created objects support growth
+     */
+    boolean supportsGrowth();
+}
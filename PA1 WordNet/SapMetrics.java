@@ -0,0 +1,222 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The SapMetrics class is a SapQueryListener which aggregates statistics of
+ * queries into counters. Counters may be read directly or exported by JMX
+ * (the class is a standard MBean).
+ * <p>
+ * This implementation keeps counters in atomic variables, so one object may
+ * be shared between threads and between several SAP and WordNet objects.
+ * Latencies are counted in a histogram with power of two buckets.
+ *
+ * @author Sergey Esipenko
+ */
+public class SapMetrics implements SapQueryListener, SapMetricsMBean {
+
+    /**
+     * Number of histogram buckets.
+     */
+    private static final int BUCKETS = Long.SIZE;
+
+    /**
+     * Percents in the whole.
+     */
+    private static final double PERCENTS = 100;
+
+    /**
+     * Number of queries.
+     */
+    private final AtomicLong queries = new AtomicLong();
+
+    /**
+     * Number of visited vertices.
+     */
+    private final AtomicLong verticesVisited = new AtomicLong();
+
+    /**
+     * Number of expanded layers.
+     */
+    private final AtomicLong layersExpanded = new AtomicLong();
+
+    /**
+     * Number of relaxed edges.
+     */
+    private final AtomicLong edgesRelaxed = new AtomicLong();
+
+    /**
+     * Total latency.
+     */
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    /**
+     * Maximal latency.
+     */
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * Histogram of latencies.
+     */
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of cache hits.
+     */
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * Number of cache misses.
+     */
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * Registers this object in the platform MBean server.
+     *
+     * @param name
+     *            object name (e.g. "WordNet:type=SapMetrics")
+     */
+    public final void register(final String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName(name));
+        } catch (JMException ex) {
+            throw new IllegalArgumentException("Could not register " + name,
+                    ex);
+        }
+    }
+
+    @Override
+    public final void queryCompleted(final long latencyNanos,
+            final int vertices, final int layers, final int edges) {
+        queries.incrementAndGet();
+        verticesVisited.addAndGet(vertices);
+        layersExpanded.addAndGet(layers);
+        edgesRelaxed.addAndGet(edges);
+        totalLatency.addAndGet(latencyNanos);
+        long max = maxLatency.get();
+        while (latencyNanos > max
+                && !maxLatency.compareAndSet(max, latencyNanos)) {
+            max = maxLatency.get();
+        }
+        histogram.incrementAndGet(bucket(latencyNanos));
+    }
+
+    @Override
+    public final void cacheLookup(final boolean hit) {
+        if (hit) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+        }
+    }
+
+    @Override
+    public final long getQueries() {
+        return queries.get();
+    }
+
+    @Override
+    public final long getVerticesVisited() {
+        return verticesVisited.get();
+    }
+
+    @Override
+    public final long getLayersExpanded() {
+        return layersExpanded.get();
+    }
+
+    @Override
+    public final long getEdgesRelaxed() {
+        return edgesRelaxed.get();
+    }
+
+    @Override
+    public final long getTotalLatencyNanos() {
+        return totalLatency.get();
+    }
+
+    @Override
+    public final long getMaxLatencyNanos() {
+        return maxLatency.get();
+    }
+
+    @Override
+    public final long[] getLatencyHistogram() {
+        final long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = histogram.get(i);
+        }
+        return copy;
+    }
+
+    @Override
+    public final long latencyPercentileNanos(final double percentile) {
+        final long[] counts = getLatencyHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        final long rank = (long) Math.ceil(total * percentile / PERCENTS);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen > 0 && seen >= rank) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public final long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public final long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @Override
+    public final double getCacheHitRate() {
+        final long hits = cacheHits.get();
+        final long lookups = hits + cacheMisses.get();
+        if (lookups == 0) {
+            return 0;
+        }
+        return (double) hits / lookups;
+    }
+
+    @Override
+    public final void reset() {
+        queries.set(0);
+        verticesVisited.set(0);
+        layersExpanded.set(0);
+        edgesRelaxed.set(0);
+        totalLatency.set(0);
+        maxLatency.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+        cacheHits.set(0);
+        cacheMisses.set(0);
+    }
+
+    /**
+     * Finds histogram bucket of latency.
+     *
+     * @param latencyNanos
+     *            latency in nanoseconds
+     * @return index of the bucket
+     */
+    private static int bucket(final long latencyNanos) {
+        if (latencyNanos <= 0) {
+            return 0;
+        }
+        return BUCKETS - 1 - Long.numberOfLeadingZeros(latencyNanos);
+    }
+}
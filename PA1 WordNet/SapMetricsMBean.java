@@ -0,0 +1,92 @@
+/**
+ * Management interface of SapMetrics: aggregated counters of SAP queries.
+ *
+ * @author Sergey Esipenko
+ */
+public interface SapMetricsMBean {
+    /**
+     * Returns number of queries.
+     *
+     * @return number of queries
+     */
+    long getQueries();
+
+    /**
+     * Returns total number of vertices visited by queries.
+     *
+     * @return number of visited vertices
+     */
+    long getVerticesVisited();
+
+    /**
+     * Returns total number of BFS layers expanded by queries.
+     *
+     * @return number of expanded layers
+     */
+    long getLayersExpanded();
+
+    /**
+     * Returns total number of edges relaxed by queries.
+     *
+     * @return number of relaxed edges
+     */
+    long getEdgesRelaxed();
+
+    /**
+     * Returns total duration of queries.
+     *
+     * @return total latency in nanoseconds
+     */
+    long getTotalLatencyNanos();
+
+    /**
+     * Returns maximal duration of a query.
+     *
+     * @return maximal latency in nanoseconds
+     */
+    long getMaxLatencyNanos();
+
+    /**
+     * Returns histogram of latencies: element i is number of queries which
+     * took from 2^i (inclusive) to 2^(i + 1) (exclusive) nanoseconds.
+     *
+     * @return copy of the histogram
+     */
+    long[] getLatencyHistogram();
+
+    /**
+     * Returns upper bound of latency percentile estimated by the histogram.
+     *
+     * @param percentile
+     *            percentile from 0 to 100
+     * @return upper bound of the bucket containing the percentile; 0 if there
+     *         were no queries
+     */
+    long latencyPercentileNanos(final double percentile);
+
+    /**
+     * Returns number of cache hits.
+     *
+     * @return number of cache hits
+     */
+    long getCacheHits();
+
+    /**
+     * Returns number of cache misses.
+     *
+     * @return number of cache misses
+     */
+    long getCacheMisses();
+
+    /**
+     * Returns fraction of successful cache lookups.
+     *
+     * @return hit rate from 0 to 1; 0 if there were no lookups
+     */
+    double getCacheHitRate();
+
+    /**
+     * Resets all counters.
+     */
+    void reset();
+}
@@ -0,0 +1,32 @@
+/**
+ * Interface for listeners of SAP queries. Listeners are called by the thread
+ * which performs the query, so implementations must be thread-safe if the
+ * SAP or WordNet object is shared between threads.
+ *
+ * @author Sergey Esipenko
+ */
+public interface SapQueryListener {
+    /**
+     * Called after each query.
+     *
+     * @param latencyNanos
+     *            duration of the query in nanoseconds
+     * @param verticesVisited
+     *            number of vertices visited by searches (0 if the SAP helper
+     *            object doesn't provide statistics)
+     * @param layersExpanded
+     *            number of BFS layers expanded by searches
+     * @param edgesRelaxed
+     *            number of edges relaxed by searches
+     */
+    void queryCompleted(final long latencyNanos, final int verticesVisited,
+            final int layersExpanded, final int edgesRelaxed);
+
+    /**
+     * Called after each lookup in the cache of answers.
+     *
+     * @param hit
+     *            true if the answer was found in the cache
+     */
+    void cacheLookup(final boolean hit);
+}
@@ -0,0 +1,28 @@
+/**
+ * Interface for SapFinder objects which report work done by the last query of
+ * the calling thread.
+ *
+ * @author Sergey Esipenko
+ */
+public interface SearchStatistics {
+    /**
+     * Returns number of vertices visited by the last query.
+     *
+     * @return number of visited vertices
+     */
+    int lastVisitedCount();
+
+    /**
+     * Returns number of BFS layers expanded by the last query.
+     *
+     * @return number of expanded layers
+     */
+    int lastLayersExpanded();
+
+    /**
+     * Returns number of edges relaxed by the last query.
+     *
+     * @return number of relaxed edges
+     */
+    int lastEdgesRelaxed();
+}
@@ -0,0 +1,82 @@
+import java.util.Arrays;
+
+/**
+ * The StampedMarks class is a set of marked elements which is cleared in
+ * constant time: an element is marked if its stamp equals the current one.
+ * The array of stamps is filled only when the stamp overflows, so a search
+ * using these marks takes time proportional to the part of the graph it
+ * explores. The set may be enlarged, new elements are unmarked. The object
+ * isn't thread-safe.
+ *
+ * @author Sergey Esipenko
+ */
+public final class StampedMarks {
+
+    /**
+     * Stamps of elements.
+     */
+    private int[] stamps;
+
+    /**
+     * Current stamp.
+     */
+    private int stamp = 1;
+
+    /**
+     * Constructor takes number of elements. All of them are unmarked.
+     *
+     * @param size
+     *            number of elements
+     */
+    public StampedMarks(final int size) {
+        this.stamps = new int[size];
+    }
+
+    /**
+     * Unmarks all elements.
+     */
+    public void clear() {
+        if (++stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Enlarges the set unless it has enough elements.
+     *
+     * @param size
+     *            required number of elements
+     */
+    public void ensureCapacity(final int size) {
+        if (stamps.length < size) {
+            stamps = Arrays.copyOf(stamps, Math.max(size, 2 * stamps.length));
+        }
+    }
+
+    /**
+     * Marks element.
+     *
+     * @param i
+     *            the element
+     * @return true if element wasn't marked before; false otherwise
+     */
+    public boolean mark(final int i) {
+        if (stamps[i] == stamp) {
+            return false;
+        }
+        stamps[i] = stamp;
+        return true;
+    }
+
+    /**
+     * Checks whether element is marked.
+     *
+     * @param i
+     *            the element
+     * @return true if element is marked
+     */
+    public boolean isMarked(final int i) {
+        return stamps[i] == stamp;
+    }
+}
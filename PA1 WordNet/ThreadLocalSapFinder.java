@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread-safe helper class for the SAP data type. Most of SapFinder
+ * implementations keep mutable per-query state (BFS marks, queues, current
+ * answer), so they can't be shared between threads.
+ * <p>
+ * This implementation keeps a separate SapFinder object for each thread and
+ * delegates all queries to the object of the calling thread. Objects are
+ * created lazily by the given factory, so threads which never perform queries
+ * don't allocate any search state. Statistics of the last query are taken from
+ * the object of the calling thread (zeros if it doesn't provide them). Growth
+ * notifications are passed to objects of all threads, so created objects are
+ * kept until this object is dropped.
+ *
+ * @author Sergey Esipenko
+ */
+public class ThreadLocalSapFinder extends AbstractSapFinder implements
+        SearchStatistics {
+
+    /**
+     * SapFinder objects of threads.
+     */
+    private final ThreadLocal<SapFinder> finders;
+
+    /**
+     * SapFinder objects of all threads (for growth notifications).
+     */
+    private final List<SapFinder> created = new ArrayList<SapFinder>();
+
+    /**
+     * Do objects of threads support growth of the digraph?
+     */
+    private final boolean growth;
+
+    /**
+     * Constructor takes digraph and factory of per-thread SapFinder objects.
+     *
+     * @param directedGraph
+     *            digraph for SAP processing (it may grow only if objects
+     *            created by the factory support growth)
+     * @param factory
+     *            factory for creating SapFinder object of each thread
+     */
+    public ThreadLocalSapFinder(final CompactDigraph directedGraph,
+            final SapFinderFactory factory) {
+        super(directedGraph);
+        this.finders = new ThreadLocal<SapFinder>() {
+            @Override
+            protected SapFinder initialValue() {
+                final SapFinder finder = factory.create(getDigraph());
+                synchronized (created) {
+                    created.add(finder);
+                }
+                return finder;
+            }
+        };
+        this.growth = factory.supportsGrowth();
+    }
+
+    /**
+     * Creates factory of ThreadLocalSapFinder objects.
+     *
+     * @param factory
+     *            factory for creating SapFinder object of each thread
+     * @return factory of thread-safe SapFinder objects
+     */
+    public static SapFinderFactory factory(final SapFinderFactory factory) {
+        return new SapFinderFactory() {
+            @Override
+            public SapFinder create(final CompactDigraph digraph) {
+                return new ThreadLocalSapFinder(digraph, factory);
+            }
+
+            @Override
+            public boolean supportsGrowth() {
+                return factory.supportsGrowth();
+            }
+        };
+    }
+
+    @Override
+    public final int lastVisitedCount() {
+        final SapFinder finder = finders.get();
+        if (finder instanceof SearchStatistics) {
+            return ((SearchStatistics) finder).lastVisitedCount();
+        }
+        return 0;
+    }
+
+    @Override
+    public final int lastLayersExpanded() {
+        final SapFinder finder = finders.get();
+        if (finder instanceof SearchStatistics) {
+            return ((SearchStatistics) finder).lastLayersExpanded();
+        }
+        return 0;
+    }
+
+    @Override
+    public final int lastEdgesRelaxed() {
+        final SapFinder finder = finders.get();
+        if (finder instanceof SearchStatistics) {
+            return ((SearchStatistics) finder).lastEdgesRelaxed();
+        }
+        return 0;
+    }
+
+    @Override
+    public final boolean supportsGrowth() {
+        return growth;
+    }
+
+    @Override
+    public final void vertexAdded(final int v) {
+        synchronized (created) {
+            for (SapFinder finder : created) {
+                finder.vertexAdded(v);
+            }
+        }
+    }
+
+    @Override
+    public final void edgeAdded(final int from, final int to,
+            final int[] affected) {
+        synchronized (created) {
+            for (SapFinder finder : created) {
+                finder.edgeAdded(from, to, affected);
+            }
+        }
+    }
+
+    @Override
+    public final long packedSap(final int first, final int second) {
+        return finders.get().packedSap(first, second);
+    }
+
+    @Override
+    public final long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second) {
+        return finders.get().packedSap(first, second);
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo) {
+        return finders.get().packedSap(first, firstFrom, firstTo, second,
+                secondFrom, secondTo);
+    }
+
+    @Override
+    public final long packedSap(final int first, final int second,
+            final int maxLength) {
+        return finders.get().packedSap(first, second, maxLength);
+    }
+
+    @Override
+    public final long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second, final int maxLength) {
+        return finders.get().packedSap(first, second, maxLength);
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo, final int maxLength) {
+        return finders.get().packedSap(first, firstFrom, firstTo, second,
+                secondFrom, secondTo, maxLength);
+    }
+}
@@ -0,0 +1,229 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The TopologicalSort class sorts digraph topologically by Kahn's algorithm
+ * and keeps the order and depths of vertices for later use by indexes
+ * (WordNet validates the digraph by the sort and passes it to
+ * DagSapFinderFactory).
+ * <p>
+ * This implementation is iterative, so it works for deep graphs too. In-degrees
+ * of vertices are computed in parallel for large graphs: each part of vertices
+ * counts incoming edges of its sources in its own array, then arrays are
+ * summed up by ranges of vertices. The order array serves as the queue of
+ * Kahn's algorithm and the array of in-degrees is reused for depths, so apart
+ * from partial counters of parallel parts only two arrays are allocated.
+ *
+ * @author Sergey Esipenko
+ */
+public final class TopologicalSort {
+
+    /**
+     * Minimal number of edges counted by one parallel part.
+     */
+    private static final int PART_EDGES = 1 << 16;
+
+    /**
+     * Number of vertices summed up by one parallel task.
+     */
+    private static final int MERGE_GRAIN = 1 << 12;
+
+    /**
+     * Vertices in topological order (vertices without incoming edges first);
+     * null if digraph has a cycle.
+     */
+    private final int[] order;
+
+    /**
+     * Depths of vertices; null if digraph has a cycle.
+     */
+    private final int[] depths;
+
+    /**
+     * Number of sinks (vertices without outgoing edges).
+     */
+    private final int sinks;
+
+    /**
+     * Constructor takes digraph and sorts it.
+     *
+     * @param digraph
+     *            digraph to sort
+     */
+    public TopologicalSort(final CompactDigraph digraph) {
+        final int v = digraph.V();
+        final int[] inDegrees = new int[v];
+        this.sinks = countInDegrees(digraph, inDegrees);
+        final int[] queue = new int[v];
+        int tail = 0;
+        for (int w = 0; w < v; w++) {
+            if (inDegrees[w] == 0) {
+                queue[tail++] = w;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            final int w = queue[head];
+            final int end = digraph.end(w);
+            for (int e = digraph.begin(w); e < end; e++) {
+                final int x = digraph.target(e);
+                if (--inDegrees[x] == 0) {
+                    queue[tail++] = x;
+                }
+            }
+        }
+        if (tail < v) {
+            this.order = null;
+            this.depths = null;
+            return;
+        }
+        // all in-degrees are zero now, the array is reused for depths
+        for (int k = v - 1; k >= 0; k--) {
+            final int w = queue[k];
+            int depth = 0;
+            final int end = digraph.end(w);
+            for (int e = digraph.begin(w); e < end; e++) {
+                depth = Math.max(depth, inDegrees[digraph.target(e)] + 1);
+            }
+            inDegrees[w] = depth;
+        }
+        this.order = queue;
+        this.depths = inDegrees;
+    }
+
+    /**
+     * Checks whether digraph is acyclic.
+     *
+     * @return true if digraph is a DAG; false otherwise
+     */
+    public boolean isDag() {
+        return order != null;
+    }
+
+    /**
+     * Returns number of sinks (vertices without outgoing edges).
+     *
+     * @return number of sinks
+     */
+    public int sinks() {
+        return sinks;
+    }
+
+    /**
+     * Returns topological order of vertices: every vertex goes before targets
+     * of its edges, so in WordNet leaves go first and roots go last. The array
+     * is not copied.
+     *
+     * @return topological order of vertices; null if digraph has a cycle
+     */
+    public int[] order() {
+        return order;
+    }
+
+    /**
+     * Returns depths of vertices: depth of vertex is the number of edges in
+     * the longest path from it to a sink, so depth of each vertex is greater
+     * than depths of targets of its edges. The array is not copied.
+     *
+     * @return depths of vertices; null if digraph has a cycle
+     */
+    public int[] depths() {
+        return depths;
+    }
+
+    /**
+     * Returns depth of vertex. Throws IllegalStateException if digraph has a
+     * cycle.
+     *
+     * @param v
+     *            the vertex
+     * @return number of edges in the longest path from vertex to a sink
+     */
+    public int depth(final int v) {
+        if (depths == null) {
+            throw new IllegalStateException("Given graph isn't DAG");
+        }
+        return depths[v];
+    }
+
+    /**
+     * Fills in-degrees of vertices and counts sinks. Graphs with many edges are
+     * processed in parallel.
+     *
+     * @param digraph
+     *            digraph to process
+     * @param inDegrees
+     *            zero array for storing in-degrees
+     * @return number of sinks
+     */
+    private static int countInDegrees(final CompactDigraph digraph,
+            final int[] inDegrees) {
+        final int v = digraph.V();
+        final int parts = Math.min(
+                ForkJoinPool.commonPool().getParallelism(),
+                digraph.E() / PART_EDGES);
+        if (parts <= 1) {
+            return countInDegrees(digraph, 0, v, inDegrees);
+        }
+        final int[][] partials = new int[parts][];
+        partials[0] = inDegrees;
+        final int[] partSinks = new int[parts];
+        ParallelRangeTask.invoke(new ParallelRangeTask.RangeProcessor() {
+            @Override
+            public void process(final int from, final int to) {
+                for (int p = from; p < to; p++) {
+                    if (partials[p] == null) {
+                        partials[p] = new int[v];
+                    }
+                    partSinks[p] = countInDegrees(digraph,
+                            (int) ((long) v * p / parts),
+                            (int) ((long) v * (p + 1) / parts), partials[p]);
+                }
+            }
+        }, parts, 1);
+        ParallelRangeTask.invoke(new ParallelRangeTask.RangeProcessor() {
+            @Override
+            public void process(final int from, final int to) {
+                for (int p = 1; p < parts; p++) {
+                    final int[] partial = partials[p];
+                    for (int w = from; w < to; w++) {
+                        inDegrees[w] += partial[w];
+                    }
+                }
+            }
+        }, v, MERGE_GRAIN);
+        int sinks = 0;
+        for (int p = 0; p < parts; p++) {
+            sinks += partSinks[p];
+        }
+        return sinks;
+    }
+
+    /**
+     * Adds edges of vertices from the range to in-degrees of their targets and
+     * counts sinks in the range.
+     *
+     * @param digraph
+     *            digraph to process
+     * @param from
+     *            beginning of the range of sources (inclusive)
+     * @param to
+     *            end of the range of sources (exclusive)
+     * @param inDegrees
+     *            array of in-degree counters
+     * @return number of sinks in the range
+     */
+    private static int countInDegrees(final CompactDigraph digraph,
+            final int from, final int to, final int[] inDegrees) {
+        int sinks = 0;
+        for (int v = from; v < to; v++) {
+            final int end = digraph.end(v);
+            final int begin = digraph.begin(v);
+            if (begin == end) {
+                sinks++;
+            }
+            for (int e = begin; e < end; e++) {
+                inDegrees[digraph.target(e)]++;
+            }
+        }
+        return sinks;
+    }
+}
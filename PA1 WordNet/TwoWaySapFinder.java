@@ -5,11 +5,32 @@
  * <p>
  * This implementation uses LayeredBreadthFirstDirectedSearch helper types to
  * perform two breadth first searches from both sets simultaneously layer by
- * layer. Updates answer on each layer processing.
+ * layer. Updates answer on each layer processing. Layers are traversed by the
+ * loop of this class (the check of another search is fused into it), the
+ * answer is kept in primitive fields, so queries don't allocate.
+ * <p>
+ * This class isn't thread-safe: use ThreadLocalSapFinder with the FACTORY to
+ * share a digraph between several threads.
  *
  * @author Sergey Esipenko
  */
-public class TwoWaySapFinder extends AbstractSapFinder {
+public class TwoWaySapFinder extends AbstractSapFinder implements
+        SearchStatistics {
+
+    /**
+     * Factory of TwoWaySapFinder objects.
+     */
+    public static final SapFinderFactory FACTORY = new SapFinderFactory() {
+        @Override
+        public SapFinder create(final CompactDigraph digraph) {
+            return new TwoWaySapFinder(digraph);
+        }
+
+        @Override
+        public boolean supportsGrowth() {
+            return true;
+        }
+    };
 
     /**
      * First LayeredBreadthFirstDirectedSearch helper object.
@@ -22,9 +43,14 @@ public class TwoWaySapFinder extends AbstractSapFinder {
     private final LayeredBreadthFirstDirectedSearch helperBfs2;
 
     /**
-     * Best answer for query.
+     * Length of the best answer for query; -1 if there is no answer yet.
      */
-    private SapAnswer sapAnswer;
+    private int bestLength;
+
+    /**
+     * Ancestor of the best answer for query; -1 if there is no answer yet.
+     */
+    private int bestAncestor;
 
     /**
      * Constructor takes digraph.
@@ -32,30 +58,83 @@ public class TwoWaySapFinder extends AbstractSapFinder {
      * @param directedGraph
      *            digraph for SAP processing.
      */
-    public TwoWaySapFinder(final Digraph directedGraph) {
+    public TwoWaySapFinder(final CompactDigraph directedGraph) {
         super(directedGraph);
         helperBfs1 = new LayeredBreadthFirstDirectedSearch(getDigraph());
         helperBfs2 = new LayeredBreadthFirstDirectedSearch(getDigraph());
-        attachHandlers(helperBfs1, helperBfs2);
     }
 
     @Override
-    public final SapAnswer sap(final int first, final int second) {
+    public final int lastVisitedCount() {
+        return helperBfs1.visitedCount() + helperBfs2.visitedCount();
+    }
+
+    @Override
+    public final int lastLayersExpanded() {
+        return helperBfs1.layersExpanded() + helperBfs2.layersExpanded();
+    }
+
+    @Override
+    public final int lastEdgesRelaxed() {
+        return helperBfs1.edgesRelaxed() + helperBfs2.edgesRelaxed();
+    }
+
+    @Override
+    public final boolean supportsGrowth() {
+        return true;
+    }
+
+    @Override
+    public final long packedSap(final int first, final int second) {
         helperBfs1.prepare(first);
         helperBfs2.prepare(second);
-        return sap(helperBfs1, helperBfs2);
+        return sap(helperBfs1, helperBfs2, Integer.MAX_VALUE);
     }
 
     @Override
-    public final SapAnswer sap(final Iterable<Integer> first,
+    public final long packedSap(final Iterable<Integer> first,
             final Iterable<Integer> second) {
         helperBfs1.prepare(first);
         helperBfs2.prepare(second);
-        return sap(helperBfs1, helperBfs2);
+        return sap(helperBfs1, helperBfs2, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo) {
+        helperBfs1.prepare(first, firstFrom, firstTo);
+        helperBfs2.prepare(second, secondFrom, secondTo);
+        return sap(helperBfs1, helperBfs2, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final long packedSap(final int first, final int second,
+            final int maxLength) {
+        helperBfs1.prepare(first);
+        helperBfs2.prepare(second);
+        return sap(helperBfs1, helperBfs2, maxLength);
+    }
+
+    @Override
+    public final long packedSap(final Iterable<Integer> first,
+            final Iterable<Integer> second, final int maxLength) {
+        helperBfs1.prepare(first);
+        helperBfs2.prepare(second);
+        return sap(helperBfs1, helperBfs2, maxLength);
+    }
+
+    @Override
+    public final long packedSap(final int[] first, final int firstFrom,
+            final int firstTo, final int[] second, final int secondFrom,
+            final int secondTo, final int maxLength) {
+        helperBfs1.prepare(first, firstFrom, firstTo);
+        helperBfs2.prepare(second, secondFrom, secondTo);
+        return sap(helperBfs1, helperBfs2, maxLength);
     }
 
     /**
-     * Finds optimal ancestor and returns corresponding SapAnswer object.
+     * Finds optimal ancestor and returns corresponding packed answer.
      *
      * @param bfs1
      *            helper BreadthFirstDirectedPaths object for the first set of
@@ -63,64 +142,57 @@ public class TwoWaySapFinder extends AbstractSapFinder {
      * @param bfs2
      *            helper BreadthFirstDirectedPaths object for the second set of
      *            vertices
-     * @return answer for the query stored in the SapAnswer object
+     * @param maxLength
+     *            maximal length of interesting ancestral path; paths found
+     *            at layer k are at least k long, so the search stops after
+     *            layer maxLength
+     * @return answer for the query packed by SapAnswer.pack()
      */
-    private SapAnswer sap(final LayeredBreadthFirstDirectedSearch bfs1,
-            final LayeredBreadthFirstDirectedSearch bfs2) {
-        sapAnswer = null; // resets previous answer
-        for (int layer = 0; sapAnswer == null || sapAnswer.getLength() > layer;
-                layer++) {
+    private long sap(final LayeredBreadthFirstDirectedSearch bfs1,
+            final LayeredBreadthFirstDirectedSearch bfs2,
+            final int maxLength) {
+        bestLength = -1; // resets previous answer
+        bestAncestor = -1;
+        for (int layer = 0; layer <= maxLength
+                && (bestLength == -1 || bestLength > layer); layer++) {
             if (bfs1.hasNextLayer() || bfs2.hasNextLayer()) {
-                bfs1.nextLayer();
-                bfs2.nextLayer();
+                if (bfs1.hasNextLayer()) {
+                    processLayer(bfs1, bfs2);
+                }
+                if (bfs2.hasNextLayer()) {
+                    processLayer(bfs2, bfs1);
+                }
             } else {
                 break;
             }
         }
-        return sapAnswer;
-    }
-
-    /**
-     * Connects to helper BFS objects by attaching correct handlers to both of
-     * them.
-     *
-     * @param bfs1
-     *            first helper BFS object to attaching handler
-     * @param bfs2
-     *            second helper BFS object to attaching handler
-     */
-    private void attachHandlers(final LayeredBreadthFirstDirectedSearch bfs1,
-            final LayeredBreadthFirstDirectedSearch bfs2) {
-        attachHandler(bfs1, bfs2);
-        attachHandler(bfs2, bfs1);
+        return SapAnswer.bound(SapAnswer.pack(bestLength, bestAncestor),
+                maxLength);
     }
 
     /**
-     * Initialize correct handler for pair of LayeredBreadthFirstDirectedSearch
-     * objects and attaches it to corresponding object. When the first BFS
-     * object visits vertex v handler tries to update answer by examining v in
-     * the second BFS object.
+     * Processes the next layer of the first search. Each vertex of the layer
+     * is examined in the second search before its edges are relaxed.
      *
      * @param bfs1
-     *            first BFS helper object (it visits vertex v)
+     *            search whose layer is processed
      * @param bfs2
-     *            second BFS helper object (it provides information about vertex
-     *            v)
+     *            another search (it provides information about vertices)
      */
-    private void attachHandler(final LayeredBreadthFirstDirectedSearch bfs1,
+    private void processLayer(final LayeredBreadthFirstDirectedSearch bfs1,
             final LayeredBreadthFirstDirectedSearch bfs2) {
-        bfs1.setVertexProcessingHandler(new LayeredBreadthFirstDirectedSearch
-                .VertexProcessingHandler() {
-            @Override
-            public void onVertexVisited(final int v) {
-                if (bfs2.hasPathTo(v)) {
-                    final int length = bfs1.distTo(v) + bfs2.distTo(v);
-                    if (sapAnswer == null || sapAnswer.getLength() > length) {
-                        sapAnswer = new SapAnswer(length, v);
-                    }
+        bfs1.beginLayer();
+        final int end = bfs1.layerEnd();
+        for (int i = bfs1.layerBegin(); i < end; i++) {
+            final int v = bfs1.visited(i);
+            if (bfs2.hasPathTo(v)) {
+                final int length = bfs1.distTo(v) + bfs2.distTo(v);
+                if (bestLength == -1 || bestLength > length) {
+                    bestLength = length;
+                    bestAncestor = v;
                 }
             }
-        });
+            bfs1.expand(v);
+        }
     }
-
 }
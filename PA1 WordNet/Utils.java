@@ -15,7 +15,9 @@ public final class Utils {
     }
 
     /**
-     * Checks statement and if it is false throws runtimeException.
+     * Checks statement and if it is false throws runtimeException. The
+     * exception is built before the check, so code which runs per query
+     * (index and noun checks, parsing) throws explicitly instead.
      *
      * @param statement
      *            statement to check
@@ -29,6 +31,30 @@ public final class Utils {
         }
     }
 
+    /**
+     * Reports completed query to listener. Statistics of searches are taken
+     * from SAP helper object if it provides them.
+     *
+     * @param listener
+     *            listener of queries
+     * @param finder
+     *            SAP helper object which performed the query
+     * @param startNanos
+     *            value of System.nanoTime() before the query
+     */
+    public static void reportQuery(final SapQueryListener listener,
+            final SapFinder finder, final long startNanos) {
+        final long latency = System.nanoTime() - startNanos;
+        if (finder instanceof SearchStatistics) {
+            final SearchStatistics statistics = (SearchStatistics) finder;
+            listener.queryCompleted(latency, statistics.lastVisitedCount(),
+                    statistics.lastLayersExpanded(),
+                    statistics.lastEdgesRelaxed());
+        } else {
+            listener.queryCompleted(latency, 0, 0, 0);
+        }
+    }
+
     /**
      * Converts iterable to set.
      *
@@ -1,42 +1,114 @@
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * The WordNet class is designed to maintain set of synsets and relations
  * between them.
  * <p>
- * This implementation uses DagSapFinder data type for processing SAP queries.
+ * By default this implementation uses TwoWaySapFinder data type for processing
+ * SAP queries. Queries may be performed from several threads simultaneously,
+ * each thread uses its own search state. Since the graph is a rooted DAG,
+ * AncestorIndexSapFinder may be used instead to answer queries without graph
+ * traversal.
+ * <p>
+ * Synsets and hypernym edges may be added to a live instance. Only the change
+ * is validated: a new synset has no hyponyms and must have a hypernym, so it
+ * keeps the graph a DAG with one root; a new edge is checked for cycles by a
+ * search from its head. Cached answers are dropped for affected nouns only.
+ * TwoWaySapFinder follows growth of the digraph, AncestorIndexSapFinder and
+ * LcaSapFinder update their data for the affected synsets only; updates are
+ * refused if the SAP helper doesn't support growth. Queries and updates are
+ * separated by a read-write lock.
+ * <p>
+ * Queries for noun pairs may be reported to a SapQueryListener (e.g.
+ * SapMetrics registered as a JMX bean).
+ * <p>
+ * Downward queries (descendants of synset, numbers of descendants and nouns
+ * under it) are answered by HyponymIndex with precomputed counts. Once built,
+ * HyponymIndex and the index of nearest() follow updates like the SAP
+ * helpers.
  *
  * @author Sergey Esipenko
  */
 public class WordNet {
 
     /**
-     * Map for storing connection between nouns and associated synset
+     * Index for storing connection between nouns and associated synset
      * identifiers.
      */
-    private final Map<String, List<Integer>> nounsIndexes;
+    private final NounIndex nounIndex;
 
     /**
      * Simple array which is used to obtain string representation of synset by
-     * its identifier.
+     * its identifier (it may have spare capacity).
      */
     private String[] synsets;
 
     /**
      * Directed graph for storing ancestral relations.
      */
-    private Digraph digraph;
+    private final CompactDigraph digraph;
 
     /**
      * SAP helper object for processing distance() and sap() operations.
      */
     private final SapFinder sapFinder;
 
+    /**
+     * Lock separating queries (read) from updates (write).
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Reverse of digraph; built on the first query or update which needs it
+     * and maintained by updates since then.
+     */
+    private volatile CompactDigraph hyponyms;
+
+    /**
+     * Search for checking new edges; built on the first addHypernym() call.
+     */
+    private LayeredBreadthFirstDirectedSearch ancestorSearch;
+
+    /**
+     * Search for finding affected synsets; built on the first addHypernym()
+     * call.
+     */
+    private LayeredBreadthFirstDirectedSearch descendantSearch;
+
+    /**
+     * Cache of answers for noun pairs; null if caching is disabled.
+     */
+    private volatile SapCache<String> cache;
+
+    /**
+     * Helper object for queries sharing one noun.
+     */
+    private final MultiSourceSap multiSourceSap;
+
+    /**
+     * Listener of queries; null if instrumentation is disabled.
+     */
+    private volatile SapQueryListener queryListener;
+
+    /**
+     * Helper object for nearest() queries; built on the first query and
+     * updated by updates since then.
+     */
+    private volatile NearestNouns nearestNouns;
+
+    /**
+     * Helper object for downward queries; built on the first query and
+     * updated by updates since then.
+     */
+    private volatile HyponymIndex hyponymIndex;
+
     /**
      * Constructor takes the name of the two input files.
      *
@@ -46,13 +118,226 @@ public class WordNet {
      *            name of synsets file
      */
     public WordNet(final String synsetsFile, final String hypernymsFile) {
-        nounsIndexes = new HashMap<String, List<Integer>>();
-        readSynsets(synsetsFile);
-        readHypernyms(hypernymsFile);
-        Utils.check(WordNetGraphChecker.check(digraph),
+        this(synsetsFile, hypernymsFile, ThreadLocalSapFinder
+                .factory(TwoWaySapFinder.FACTORY));
+    }
+
+    /**
+     * Constructor takes the name of the two input files and a factory of SAP
+     * helper object.
+     *
+     * @param synsetsFile
+     *            name of synsets file
+     * @param hypernymsFile
+     *            name of synsets file
+     * @param factory
+     *            factory of SAP helper object (created object must be
+     *            thread-safe if WordNet is shared between threads)
+     */
+    public WordNet(final String synsetsFile, final String hypernymsFile,
+            final SapFinderFactory factory) {
+        final WordNetLoader loader = new WordNetLoader(synsetsFile,
+                hypernymsFile);
+        nounIndex = loader.getNounIndex();
+        synsets = loader.getSynsets();
+        digraph = loader.getDigraph();
+        // the sort validates the graph and is reused by indexed SAP helpers
+        final TopologicalSort sort = new TopologicalSort(digraph);
+        Utils.check(WordNetGraphChecker.check(sort),
                 new IllegalArgumentException(
                         "Given graph isn't DAG with one root"));
-        sapFinder = new TwoWaySapFinder(digraph);
+        if (factory instanceof DagSapFinderFactory) {
+            sapFinder = ((DagSapFinderFactory) factory).create(digraph, sort);
+        } else {
+            sapFinder = factory.create(digraph);
+        }
+        multiSourceSap = new MultiSourceSap(digraph);
+    }
+
+    /**
+     * Constructor takes already built data.
+     *
+     * @param snapshot
+     *            snapshot with WordNet data
+     */
+    private WordNet(final WordNetSnapshot snapshot) {
+        nounIndex = snapshot.getNounIndex();
+        synsets = snapshot.getSynsets();
+        digraph = snapshot.getDigraph();
+        if (snapshot.getAncestorIndex() != null) {
+            sapFinder = new AncestorIndexSapFinder(digraph,
+                    snapshot.getAncestorIndex());
+        } else {
+            sapFinder = ThreadLocalSapFinder.factory(TwoWaySapFinder.FACTORY)
+                    .create(digraph);
+        }
+        multiSourceSap = new MultiSourceSap(digraph);
+    }
+
+    /**
+     * Loads WordNet from binary snapshot written by save(). The graph isn't
+     * checked again. If snapshot contains ancestor index,
+     * AncestorIndexSapFinder is used for queries.
+     *
+     * @param snapshotFile
+     *            name of snapshot file
+     * @return loaded WordNet
+     */
+    public static WordNet load(final String snapshotFile) {
+        return new WordNet(new WordNetSnapshot(snapshotFile));
+    }
+
+    /**
+     * Writes binary snapshot of this WordNet. Ancestor index is written too if
+     * this WordNet uses AncestorIndexSapFinder.
+     *
+     * @param snapshotFile
+     *            name of snapshot file
+     */
+    public void save(final String snapshotFile) {
+        lock.readLock().lock();
+        try {
+            AncestorIndex ancestorIndex = null;
+            if (sapFinder instanceof AncestorIndexSapFinder) {
+                ancestorIndex = ((AncestorIndexSapFinder) sapFinder)
+                        .getIndex();
+            }
+            WordNetSnapshot.write(snapshotFile,
+                    Arrays.copyOf(synsets, digraph.V()), nounIndex, digraph,
+                    ancestorIndex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a new synset with given hypernyms. Synsets of existing nouns get
+     * the new synset, cached answers for them are dropped. Throws
+     * UnsupportedOperationException if the SAP helper doesn't support growth.
+     *
+     * @param synset
+     *            nouns of the synset separated by spaces (second field of
+     *            synsets.txt)
+     * @param hypernymIds
+     *            identifiers of hypernyms (at least one, so the graph keeps
+     *            its single root)
+     * @return identifier of the new synset
+     */
+    public int addSynset(final String synset, final int... hypernymIds) {
+        Utils.check(hypernymIds.length > 0, new IllegalArgumentException(
+                "Synset must have a hypernym"));
+        // a noun repeated in the synset is added once
+        final Set<String> nouns = new LinkedHashSet<String>(
+                Arrays.asList(synset.split(" ")));
+        lock.writeLock().lock();
+        try {
+            checkGrowth();
+            for (int hypernym : hypernymIds) {
+                checkSynsetId(hypernym);
+            }
+            final int id = digraph.addVertex();
+            if (synsets.length == id) {
+                synsets = Arrays.copyOf(synsets, 2 * id);
+            }
+            synsets[id] = synset;
+            if (hyponyms != null) {
+                hyponyms.addVertex();
+            }
+            for (int hypernym : hypernymIds) {
+                digraph.addEdge(id, hypernym);
+                if (hyponyms != null) {
+                    hyponyms.addEdge(hypernym, id);
+                }
+            }
+            sapFinder.vertexAdded(id);
+            final Set<String> affected = new HashSet<String>();
+            final int[] positions = new int[nouns.size()];
+            int count = 0;
+            for (String noun : nouns) {
+                if (nounIndex.find(noun) != -1) {
+                    affected.add(noun);
+                }
+                positions[count] = nounIndex.add(noun);
+                nounIndex.addId(positions[count++], id);
+            }
+            final NearestNouns finder = nearestNouns;
+            if (finder != null) {
+                finder.addSynset(id, positions);
+            }
+            final HyponymIndex index = hyponymIndex;
+            if (index != null) {
+                index.addVertex(id, positions);
+            }
+            removeCached(affected);
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a hypernym edge between existing synsets. Throws
+     * IllegalArgumentException if the edge creates a cycle and
+     * UnsupportedOperationException if the SAP helper doesn't support growth.
+     * Cached answers are dropped for nouns of the synset and of all its
+     * hyponyms.
+     *
+     * @param synsetId
+     *            identifier of the synset
+     * @param hypernymId
+     *            identifier of its new hypernym
+     */
+    public void addHypernym(final int synsetId, final int hypernymId) {
+        lock.writeLock().lock();
+        try {
+            checkGrowth();
+            checkSynsetId(synsetId);
+            checkSynsetId(hypernymId);
+            if (ancestorSearch == null) {
+                ancestorSearch = new LayeredBreadthFirstDirectedSearch(
+                        digraph);
+                descendantSearch = new LayeredBreadthFirstDirectedSearch(
+                        getHyponyms());
+            }
+            // the edge closes a cycle iff the synset is an ancestor of hypernym
+            ancestorSearch.prepare(hypernymId);
+            while (ancestorSearch.hasNextLayer()) {
+                ancestorSearch.nextLayer();
+            }
+            Utils.check(!ancestorSearch.hasPathTo(synsetId),
+                    new IllegalArgumentException("Edge creates a cycle"));
+            digraph.addEdge(synsetId, hypernymId);
+            getHyponyms().addEdge(hypernymId, synsetId);
+            // only the synset and its hyponyms get new ancestors
+            descendantSearch.prepare(synsetId);
+            while (descendantSearch.hasNextLayer()) {
+                descendantSearch.nextLayer();
+            }
+            final int[] affectedIds = new int[descendantSearch.visitedCount()];
+            for (int i = 0; i < affectedIds.length; i++) {
+                affectedIds[i] = descendantSearch.visited(i);
+            }
+            sapFinder.edgeAdded(synsetId, hypernymId, affectedIds);
+            final HyponymIndex index = hyponymIndex;
+            final Set<String> affected = new HashSet<String>();
+            if (cache != null || index != null) {
+                for (int id : affectedIds) {
+                    affected.addAll(Arrays.asList(synsets[id].split(" ")));
+                }
+            }
+            if (index != null) {
+                final int[] positions = new int[affected.size()];
+                int count = 0;
+                for (String noun : affected) {
+                    positions[count++] = nounIndex.find(noun);
+                }
+                index.addEdge(synsetId, hypernymId, affectedIds, positions);
+            }
+            // nearest() follows the digraphs, it doesn't need an update
+            removeCached(affected);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -61,7 +346,12 @@ public class WordNet {
      * @return iterable sequence of all nouns in WordNet
      */
     public Iterable<String> nouns() {
-        return new LinkedList<String>(nounsIndexes.keySet());
+        lock.readLock().lock();
+        try {
+            return nounIndex.nouns();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -72,7 +362,12 @@ public class WordNet {
      * @return true if word is noun stored in WordNet; false otherwise
      */
     public boolean isNoun(final String word) {
-        return nounsIndexes.containsKey(word);
+        lock.readLock().lock();
+        try {
+            return nounIndex.find(word) != -1;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -86,9 +381,38 @@ public class WordNet {
      *         nounA and any synset of nounB.
      */
     public int distance(final String nounA, final String nounB) {
-        Iterable<Integer> aIndexes = getNounIndexes(nounA);
-        Iterable<Integer> bIndexes = getNounIndexes(nounB);
-        return sapFinder.sap(aIndexes, bIndexes).getLength();
+        lock.readLock().lock();
+        try {
+            return SapAnswer.unpackLength(packedSap(nounA, nounB));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Distance between nounA and nounB if it doesn't exceed maxDistance. The
+     * search stops as soon as longer paths remain only, so checking whether
+     * nouns are related closely enough is cheap for distant nouns.
+     *
+     * @param nounA
+     *            first noun
+     * @param nounB
+     *            second noun
+     * @param maxDistance
+     *            maximal interesting distance
+     * @return shortest possible length of ancestral path between any synset of
+     *         nounA and any synset of nounB; -1 if it's greater than
+     *         maxDistance
+     */
+    public int distance(final String nounA, final String nounB,
+            final int maxDistance) {
+        lock.readLock().lock();
+        try {
+            return SapAnswer.unpackLength(packedSap(nounA, nounB,
+                    maxDistance));
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -103,123 +427,498 @@ public class WordNet {
      *         shortest ancestral path.
      */
     public String sap(final String nounA, final String nounB) {
-        Iterable<Integer> aIndexes = getNounIndexes(nounA);
-        Iterable<Integer> bIndexes = getNounIndexes(nounB);
-        int ancestor = sapFinder.sap(aIndexes, bIndexes).getAncestor();
-        return synsets[ancestor]; // ancestor != -1
+        lock.readLock().lock();
+        try {
+            int ancestor = SapAnswer.unpackAncestor(packedSap(nounA, nounB));
+            return synsets[ancestor]; // ancestor != -1
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
-     * For unit testing of this class.
+     * Distances between all pairs of given nouns. Runs one search per noun
+     * instead of one per pair, pairs are processed in parallel.
+     *
+     * @param nouns
+     *            array of nouns
+     * @return matrix of distances: element [i][j] is distance between nouns[i]
+     *         and nouns[j]
+     */
+    public int[][] distances(final String[] nouns) {
+        final AllPairsSap allPairs;
+        lock.readLock().lock();
+        try {
+            final int[] begins = new int[nouns.length];
+            final int[] ends = new int[nouns.length];
+            for (int i = 0; i < nouns.length; i++) {
+                final int position = getNounPosition(nouns[i]);
+                begins[i] = nounIndex.begin(position);
+                ends[i] = nounIndex.end(position);
+            }
+            allPairs = new AllPairsSap(digraph, nounIndex.ids(), begins, ends);
+        } finally {
+            lock.readLock().unlock();
+        }
+        // merging doesn't touch the graph, so it runs without the lock
+        return allPairs.lengths();
+    }
+
+    /**
+     * The k nouns closest to the given noun by length of ancestral path. The
+     * noun itself isn't included, nouns at the same distance are ordered
+     * alphabetically. The first query builds index of synset nouns (it takes
+     * time comparable with a few queries) and the reverse digraph unless it's
+     * built; updates extend the index in place.
+     *
+     * @param noun
+     *            given noun
+     * @param k
+     *            number of nouns to find
+     * @return list of nouns in ranked order (fewer than k if there are not
+     *         enough nouns)
+     */
+    public List<String> nearest(final String noun, final int k) {
+        lock.readLock().lock();
+        try {
+            final int position = getNounPosition(noun);
+            NearestNouns finder = nearestNouns;
+            if (finder == null) {
+                // racy but safe: concurrent threads build equal objects
+                finder = new NearestNouns(digraph, getHyponyms(),
+                        nounIndex);
+                nearestNouns = finder;
+            }
+            final int[] positions = finder.nearest(position, k);
+            final List<String> result = new ArrayList<String>(
+                    positions.length);
+            for (int p : positions) {
+                result.add(nounIndex.noun(p));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A synset (second field of synsets.txt) by its identifier.
+     *
+     * @param synsetId
+     *            synset identifier
+     * @return nouns of the synset separated by spaces
+     */
+    public String synset(final int synsetId) {
+        lock.readLock().lock();
+        try {
+            checkSynsetId(synsetId);
+            return synsets[synsetId];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of descendants of synset (synsets which have it as ancestor).
+     * The first downward query builds hyponym index, so does the first query
+     * after update.
+     *
+     * @param synsetId
+     *            synset identifier
+     * @return number of descendants (the synset itself isn't counted)
+     */
+    public int descendantCount(final int synsetId) {
+        lock.readLock().lock();
+        try {
+            checkSynsetId(synsetId);
+            return getHyponymIndex().descendantCount(synsetId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of nouns under synset.
+     *
+     * @param synsetId
+     *            synset identifier
+     * @return number of distinct nouns of the synset and its descendants
+     */
+    public int nounCount(final int synsetId) {
+        lock.readLock().lock();
+        try {
+            checkSynsetId(synsetId);
+            return getHyponymIndex().nounCount(synsetId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Descendants of synset within given depth. Takes time proportional to
+     * the number of found synsets.
+     *
+     * @param synsetId
+     *            synset identifier
+     * @param maxDepth
+     *            maximal number of hyponym edges from the synset to a
+     *            descendant
+     * @return identifiers of descendants in nondecreasing order of distance
+     *         (the synset itself isn't included)
+     */
+    public int[] descendants(final int synsetId, final int maxDepth) {
+        lock.readLock().lock();
+        try {
+            checkSynsetId(synsetId);
+            return getHyponymIndex().descendants(synsetId, maxDepth);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns cache of answers for noun pairs.
+     *
+     * @return the cache; null if caching is disabled
+     */
+    public SapCache<String> getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets cache of answers for noun pairs. Cache may be shared between
+     * several WordNet objects with the same synsets and hypernyms unless they
+     * are updated.
+     *
+     * @param sapCache
+     *            the cache to set; null disables caching
+     */
+    public void setCache(final SapCache<String> sapCache) {
+        this.cache = sapCache;
+    }
+
+    /**
+     * Returns listener of queries.
+     *
+     * @return the listener; null if instrumentation is disabled
+     */
+    public SapQueryListener getQueryListener() {
+        return queryListener;
+    }
+
+    /**
+     * Sets listener of queries. Queries for noun pairs (distance(), sap() and
+     * pairwise batchSap()) and their cache lookups are reported; answers from
+     * the cache are reported as queries without searches.
+     *
+     * @param listener
+     *            the listener; null disables instrumentation
+     */
+    public void setQueryListener(final SapQueryListener listener) {
+        this.queryListener = listener;
+    }
+
+    /**
+     * Performs queries for noun pairs (nounsA[i], nounsB[i]) in parallel.
+     * Each query is processed by a single search, both distance and synset of
+     * common ancestor are stored into given arrays.
+     *
+     * @param nounsA
+     *            first nouns of pairs
+     * @param nounsB
+     *            second nouns of pairs
+     * @param distances
+     *            array for storing distances between nouns
+     * @param ancestors
+     *            array for storing synsets of common ancestors in shortest
+     *            ancestral paths
+     */
+    public void batchSap(final String[] nounsA, final String[] nounsB,
+            final int[] distances, final String[] ancestors) {
+        Utils.check(nounsA.length == nounsB.length
+                && nounsA.length == distances.length
+                && nounsA.length == ancestors.length,
+                new IllegalArgumentException(
+                        "Arrays must have the same length"));
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < nounsA.length; i++) {
+                getNounPosition(nounsA[i]);
+                getNounPosition(nounsB[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // each task takes the lock itself: a reader waiting for tasks
+        // would deadlock with a queued writer
+        ParallelRangeTask.invoke(new ParallelRangeTask.RangeProcessor() {
+            @Override
+            public void process(final int from, final int to) {
+                lock.readLock().lock();
+                try {
+                    for (int i = from; i < to; i++) {
+                        final long packed = packedSap(nounsA[i], nounsB[i]);
+                        distances[i] = SapAnswer.unpackLength(packed);
+                        ancestors[i] = synsets[SapAnswer
+                                .unpackAncestor(packed)];
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        }, nounsA.length);
+    }
+
+    /**
+     * Performs queries for noun pairs (nounA, nounsB[i]) by bit-parallel
+     * multi-source BFS: one traversal serves 64 queries. Cache isn't used.
+     *
+     * @param nounA
+     *            common noun of pairs
+     * @param nounsB
+     *            second nouns of pairs
+     * @param distances
+     *            array for storing distances between nouns
+     * @param ancestors
+     *            array for storing synsets of common ancestors in shortest
+     *            ancestral paths
+     */
+    public void batchSap(final String nounA, final String[] nounsB,
+            final int[] distances, final String[] ancestors) {
+        Utils.check(nounsB.length == distances.length
+                && nounsB.length == ancestors.length,
+                new IllegalArgumentException(
+                        "Arrays must have the same length"));
+        final int[] ancestorIds = new int[nounsB.length];
+        lock.readLock().lock();
+        try {
+            final int a = getNounPosition(nounA);
+            final int[] begins = new int[nounsB.length];
+            final int[] ends = new int[nounsB.length];
+            for (int i = 0; i < nounsB.length; i++) {
+                final int position = getNounPosition(nounsB[i]);
+                begins[i] = nounIndex.begin(position);
+                ends[i] = nounIndex.end(position);
+            }
+            // parallel tasks don't take the lock, the caller holds it
+            final int[] ids = nounIndex.ids();
+            multiSourceSap.sap(ids, nounIndex.begin(a), nounIndex.end(a), ids,
+                    begins, ends, distances, ancestorIds);
+            for (int i = 0; i < nounsB.length; i++) {
+                ancestors[i] = synsets[ancestorIds[i]];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * For unit testing of this class. In stream mode queries are answered by
+     * QueryPipeline: one pair per line, answers in the same format and order.
      *
      * @param args
-     *            command line arguments (synsets file, hypernyms file)
+     *            command line arguments (synsets file, hypernyms file,
+     *            optional "stream" and number of workers)
      */
     public static void main(final String[] args) {
-        WordNet wordnet = new WordNet(args[0], args[1]);
+        final WordNet wordnet = new WordNet(args[0], args[1]);
+        if (args.length > 2 && "stream".equals(args[2])) {
+            int workers = Runtime.getRuntime().availableProcessors();
+            if (args.length > 3) {
+                workers = Integer.parseInt(args[3]);
+            }
+            QueryPipeline.run(System.in, System.out,
+                    new QueryPipeline.BatchProcessor() {
+                @Override
+                public byte[] process(final byte[] batch, final int length) {
+                    return wordnet.answerBatch(batch, length);
+                }
+            }, workers);
+            return;
+        }
         while (!StdIn.isEmpty()) {
             String nounA = StdIn.readString();
             String nounB = StdIn.readString();
-            int distance = wordnet.distance(nounA, nounB);
-            String sap = wordnet.sap(nounA, nounB);
+            long packed = wordnet.packedSap(nounA, nounB);
+            int distance = SapAnswer.unpackLength(packed);
+            String sap = wordnet.synsets[SapAnswer.unpackAncestor(packed)];
             StdOut.printf("distance = %d, sap = %s\n", distance, sap);
         }
     }
 
     /**
-     * Reads file with synsets description and builds DAG to maintain ancestral
-     * relation.
+     * Answers batch of query lines for stream mode of main().
      *
-     * @param synsetsFile
-     *            file with synstes description
+     * @param batch
+     *            array with query lines (pairs of nouns)
+     * @param length
+     *            number of bytes in the batch
+     * @return answers in order of queries
      */
-    private void readSynsets(final String synsetsFile) {
-        List<String> synsetsDescriptions = new ArrayList<String>();
-        In in = new In(synsetsFile);
-        while (in.hasNextLine()) {
-            synsetsDescriptions.add(in.readLine());
+    private byte[] answerBatch(final byte[] batch, final int length) {
+        final QueryPipeline.Tokenizer tokens = new QueryPipeline.Tokenizer(
+                batch, length);
+        final StringBuilder answers = new StringBuilder();
+        lock.readLock().lock();
+        try {
+            while (tokens.next()) {
+                final String nounA = tokens.token();
+                tokens.require();
+                final long packed = packedSap(nounA, tokens.token());
+                answers.append("distance = ")
+                        .append(SapAnswer.unpackLength(packed))
+                        .append(", sap = ")
+                        .append(synsets[SapAnswer.unpackAncestor(packed)])
+                        .append('\n');
+            }
+        } finally {
+            lock.readLock().unlock();
         }
-        in.close();
-        synsets = new String[synsetsDescriptions.size()];
-        digraph = new Digraph(synsetsDescriptions.size());
-        for (String synsetDescription : synsetsDescriptions) {
-            parseSynsetDescription(synsetDescription);
+        return answers.toString().getBytes(QueryPipeline.CHARSET);
+    }
+
+    /**
+     * Drops cached answers after growth. Must be called under write lock.
+     *
+     * @param affectedNouns
+     *            nouns whose cached answers may be stale
+     */
+    private void removeCached(final Set<String> affectedNouns) {
+        final SapCache<String> sapCache = cache;
+        if (sapCache != null && !affectedNouns.isEmpty()) {
+            sapCache.removeAll(affectedNouns);
         }
     }
 
     /**
-     * Reads file with description of ancestral relations and adds appropriate
-     * directed edges to DAG. All edges go from hyponym (more specific synset)
-     * to hypernym (more general synset).
+     * Checks that the SAP helper follows growth of the digraph. Must be called
+     * under write lock before any change.
+     */
+    private void checkGrowth() {
+        Utils.check(sapFinder.supportsGrowth(),
+                new UnsupportedOperationException(
+                        "SAP helper doesn't support growth"));
+    }
+
+    /**
+     * Returns hyponym index building it if necessary. Must be called under
+     * read lock.
      *
-     * @param hypernymsFile
-     *            file with ancestral relations
-     */
-    private void readHypernyms(final String hypernymsFile) {
-        In in = new In(hypernymsFile);
-        while (in.hasNextLine()) {
-            StringTokenizer hypernymsTok = new StringTokenizer(in.readLine(),
-                    ",");
-            int hyponym = Integer.parseInt(hypernymsTok.nextToken());
-            while (hypernymsTok.hasMoreTokens()) {
-                int hypernym = Integer.parseInt(hypernymsTok.nextToken());
-                try {
-                    digraph.addEdge(hyponym, hypernym);
-                } catch (IndexOutOfBoundsException ex) {
-                    throw new IllegalArgumentException(
-                            "Graph description is incorrect");
-                }
-            }
+     * @return the hyponym index
+     */
+    private HyponymIndex getHyponymIndex() {
+        HyponymIndex index = hyponymIndex;
+        if (index == null) {
+            // racy but safe: concurrent threads build equal objects
+            index = new HyponymIndex(digraph, getHyponyms(), nounIndex);
+            hyponymIndex = index;
         }
-        in.close();
+        return index;
     }
 
     /**
-     * Reads string description of synset and store all necessary information in
-     * appropriate data structures.
+     * Returns reverse of digraph building it if necessary. Must be called
+     * under read or write lock.
      *
-     * @param synsetDescription
-     *            description of synset
+     * @return digraph with edges from hypernyms to hyponyms
      */
-    private void parseSynsetDescription(final String synsetDescription) {
-        StringTokenizer synsetDescriptionTok = new StringTokenizer(
-                synsetDescription, ",");
-        int synsetId = Integer.parseInt(synsetDescriptionTok.nextToken());
-        String synset = synsetDescriptionTok.nextToken();
-        synsets[synsetId] = synset;
-        for (String noun : synset.split(" ")) {
-            addNounIndex(noun, synsetId);
+    private CompactDigraph getHyponyms() {
+        CompactDigraph reverse = hyponyms;
+        if (reverse == null) {
+            // racy but safe: concurrent threads build equal objects
+            reverse = digraph.reverse();
+            hyponyms = reverse;
         }
+        return reverse;
     }
 
     /**
-     * Connects noun with its synset id.
+     * Checks synset identifier.
      *
-     * @param noun
-     *            connecting noun
-     * @param synsetId
-     *            synset id of noun
+     * @param id
+     *            synset identifier
      */
-    private void addNounIndex(final String noun, final int synsetId) {
-        List<Integer> indexes = nounsIndexes.get(noun);
-        if (indexes == null) {
-            indexes = new ArrayList<Integer>();
-            nounsIndexes.put(noun, indexes);
+    private void checkSynsetId(final int id) {
+        if (id < 0 || id >= digraph.V()) {
+            throw new IllegalArgumentException("Wrong synset id " + id);
         }
-        indexes.add(synsetId);
     }
 
     /**
-     * For given noun retrieves all connected synsets.
+     * Performs SAP query for two nouns. Uses cache if it's enabled. Must be
+     * called under read lock.
+     *
+     * @param nounA
+     *            first noun
+     * @param nounB
+     *            second noun
+     * @return answer for the query packed by SapAnswer.pack()
+     */
+    private long packedSap(final String nounA, final String nounB) {
+        return packedSap(nounA, nounB, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Performs bounded SAP query for two nouns. Cached answers are used, an
+     * answer is cached if it's found (found answer within the bound is the
+     * shortest one) or the query isn't bounded. Must be called under read
+     * lock.
+     *
+     * @param nounA
+     *            first noun
+     * @param nounB
+     *            second noun
+     * @param maxLength
+     *            maximal length of interesting ancestral path
+     * @return answer for the query packed by SapAnswer.pack()
+     */
+    private long packedSap(final String nounA, final String nounB,
+            final int maxLength) {
+        final SapQueryListener listener = queryListener;
+        final long start = listener == null ? 0 : System.nanoTime();
+        final SapCache<String> sapCache = cache;
+        if (sapCache != null) {
+            final Long cached = sapCache.get(nounA, nounB);
+            if (listener != null) {
+                listener.cacheLookup(cached != null);
+            }
+            if (cached != null) {
+                if (listener != null) {
+                    Utils.reportQuery(listener, null, start);
+                }
+                return SapAnswer.bound(cached, maxLength);
+            }
+        }
+        final int a = getNounPosition(nounA);
+        final int b = getNounPosition(nounB);
+        final int[] ids = nounIndex.ids();
+        final long packed = sapFinder.packedSap(ids, nounIndex.begin(a),
+                nounIndex.end(a), ids, nounIndex.begin(b), nounIndex.end(b),
+                maxLength);
+        if (listener != null) {
+            Utils.reportQuery(listener, sapFinder, start);
+        }
+        if (sapCache != null && (packed != SapAnswer.NO_ANSWER
+                || maxLength == Integer.MAX_VALUE)) {
+            sapCache.put(nounA, nounB, packed);
+        }
+        return packed;
+    }
+
+    /**
+     * For given noun retrieves its position in the nouns index.
      *
      * @param noun
      *            given noun
-     * @return iterable sequence of synset indexes for specified noun
+     * @return position of the noun (its synsets are stored in range from
+     *         nounIndex.begin() to nounIndex.end())
      */
-    private Iterable<Integer> getNounIndexes(final String noun) {
-        Iterable<Integer> nounIndexes = nounsIndexes.get(noun);
-        Utils.check(nounIndexes != null, new IllegalArgumentException("Word "
-                + noun + " isn't a noun"));
-        return nounIndexes;
+    private int getNounPosition(final String noun) {
+        final int position = nounIndex.find(noun);
+        if (position == -1) {
+            throw new IllegalArgumentException("Word " + noun
+                    + " isn't a noun");
+        }
+        return position;
     }
 }
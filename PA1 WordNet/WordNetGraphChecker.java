@@ -21,20 +21,45 @@ public final class WordNetGraphChecker {
      * @return true if graph is DAG with exactly one sink; false otherwise
      */
     public static boolean check(final Digraph digraph) {
-        if (digraph.V() == 0) {
-            return true;
-        }
-        DirectedCycle finder = new DirectedCycle(digraph);
-        if (finder.hasCycle()) {
-            return false;
-        }
-        int sinksCounter = 0;
-        for (int v = 0; v < digraph.V(); v++) {
-            if (!digraph.adj(v).iterator().hasNext()) {
-                sinksCounter++;
-            }
-        }
-        return sinksCounter == 1;
+        return check(new CompactDigraph(digraph));
     }
 
+    /**
+     * Checks whether given digraph is a DAG with exactly one sink (vertex
+     * without edges). This method is iterative, so it works for deep graphs
+     * too.
+     *
+     * @param digraph
+     *            digraph to check
+     * @return true if graph is DAG with exactly one sink; false otherwise
+     */
+    public static boolean check(final CompactDigraph digraph) {
+        return check(new TopologicalSort(digraph));
+    }
+
+    /**
+     * Checks result of topological sort of digraph: the digraph must be a DAG
+     * with exactly one sink. The sort may be kept by caller for building
+     * indexes.
+     *
+     * @param sort
+     *            topological sort of digraph to check
+     * @return true if graph is DAG with exactly one sink; false otherwise
+     */
+    public static boolean check(final TopologicalSort sort) {
+        return sort.isDag()
+                && (sort.order().length == 0 || sort.sinks() == 1);
+    }
+
+    /**
+     * Computes topological order of digraph by Kahn's algorithm: vertices
+     * without incoming edges go first.
+     *
+     * @param digraph
+     *            digraph to sort
+     * @return topological order of vertices; null if digraph has a cycle
+     */
+    public static int[] topologicalOrder(final CompactDigraph digraph) {
+        return new TopologicalSort(digraph).order();
+    }
 }
@@ -0,0 +1,406 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The WordNetLoader class reads synsets and hypernyms files in a single pass.
+ * <p>
+ * This implementation maps files into memory and parses bytes directly:
+ * numbers are parsed without creating strings, only synsets and nouns become
+ * String objects, glosses are skipped. Hypernym edges are collected in int
+ * arrays and converted into CompactDigraph.
+ *
+ * @author Sergey Esipenko
+ */
+public class WordNetLoader {
+
+    /**
+     * Charset of input files.
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Initial capacity of growing arrays.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Nanoseconds in millisecond.
+     */
+    private static final double NANOS_IN_MILLI = 1e6;
+
+    /**
+     * Bytes in megabyte.
+     */
+    private static final double BYTES_IN_MEGABYTE = 1024.0 * 1024.0;
+
+    /**
+     * Synset strings by identifier.
+     */
+    private String[] synsets;
+
+    /**
+     * Index from noun to identifiers of its synsets.
+     */
+    private NounIndex nounIndex;
+
+    /**
+     * Nouns of (noun, synset id) pairs collected while reading synsets.
+     */
+    private String[] pairNouns;
+
+    /**
+     * Synset identifiers of (noun, synset id) pairs.
+     */
+    private int[] pairIds;
+
+    /**
+     * Number of (noun, synset id) pairs.
+     */
+    private int pairs;
+
+    /**
+     * Digraph of hypernym relations.
+     */
+    private CompactDigraph digraph;
+
+    /**
+     * Total number of bytes read.
+     */
+    private long bytesRead;
+
+    /**
+     * Total loading time in nanoseconds.
+     */
+    private long loadTimeNanos;
+
+    /**
+     * Buffer with content of the file being parsed.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Position of parser in the buffer.
+     */
+    private int position;
+
+    /**
+     * Loads synsets and hypernyms files.
+     *
+     * @param synsetsFile
+     *            name of synsets file
+     * @param hypernymsFile
+     *            name of hypernyms file
+     */
+    public WordNetLoader(final String synsetsFile, final String hypernymsFile) {
+        final long start = System.nanoTime();
+        readSynsets(synsetsFile);
+        readHypernyms(hypernymsFile);
+        buffer = null;
+        loadTimeNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns synset strings by identifier.
+     *
+     * @return array of synsets
+     */
+    public final String[] getSynsets() {
+        return synsets;
+    }
+
+    /**
+     * Returns index from noun to identifiers of its synsets.
+     *
+     * @return nouns index
+     */
+    public final NounIndex getNounIndex() {
+        return nounIndex;
+    }
+
+    /**
+     * Returns digraph of hypernym relations (edges go from hyponym to
+     * hypernym).
+     *
+     * @return digraph of hypernyms
+     */
+    public final CompactDigraph getDigraph() {
+        return digraph;
+    }
+
+    /**
+     * Returns total number of bytes read.
+     *
+     * @return size of both files in bytes
+     */
+    public final long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns total loading time.
+     *
+     * @return loading time in nanoseconds
+     */
+    public final long getLoadTimeNanos() {
+        return loadTimeNanos;
+    }
+
+    /**
+     * Loads files and prints statistics.
+     *
+     * @param args
+     *            command line arguments (synsets file, hypernyms file)
+     */
+    public static void main(final String[] args) {
+        WordNetLoader loader = new WordNetLoader(args[0], args[1]);
+        double millis = loader.getLoadTimeNanos() / NANOS_IN_MILLI;
+        double megabytes = loader.getBytesRead() / BYTES_IN_MEGABYTE;
+        StdOut.printf("synsets = %d, edges = %d, nouns = %d\n",
+                loader.getSynsets().length, loader.getDigraph().E(),
+                loader.getNounIndex().size());
+        StdOut.printf("time = %.1f ms, throughput = %.1f MB/s\n", millis,
+                megabytes * 1000.0 / millis);
+    }
+
+    /**
+     * Reads file with synsets description. Each line has format
+     * "id,noun1 noun2 ...,gloss".
+     *
+     * @param synsetsFile
+     *            name of synsets file
+     */
+    private void readSynsets(final String synsetsFile) {
+        open(synsetsFile);
+        int[] ids = new int[INITIAL_CAPACITY];
+        String[] lines = new String[INITIAL_CAPACITY];
+        int count = 0;
+        final int limit = buffer.limit();
+        while (position < limit) {
+            if (skipEmptyLine()) {
+                continue;
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * count);
+                lines = Arrays.copyOf(lines, 2 * count);
+            }
+            ids[count] = readInt();
+            expect(',');
+            lines[count++] = readField();
+            skipLine();
+        }
+        synsets = new String[count];
+        pairNouns = new String[count];
+        pairIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (ids[i] >= count || synsets[ids[i]] != null) {
+                throw new IllegalArgumentException("Incorrect synset id "
+                        + ids[i]);
+            }
+            synsets[ids[i]] = lines[i];
+            addNouns(lines[i], ids[i]);
+        }
+        nounIndex = new NounIndex(pairNouns, pairIds, pairs);
+        pairNouns = null;
+        pairIds = null;
+    }
+
+    /**
+     * Reads file with ancestral relations. Each line has format
+     * "hyponym,hypernym1,hypernym2,...".
+     *
+     * @param hypernymsFile
+     *            name of hypernyms file
+     */
+    private void readHypernyms(final String hypernymsFile) {
+        open(hypernymsFile);
+        final int vertices = synsets.length;
+        int[] sources = new int[INITIAL_CAPACITY];
+        int[] targets = new int[INITIAL_CAPACITY];
+        int edges = 0;
+        final int limit = buffer.limit();
+        while (position < limit) {
+            if (skipEmptyLine()) {
+                continue;
+            }
+            final int hyponym = readVertex(vertices);
+            while (position < limit && buffer.get(position) == ',') {
+                position++;
+                if (edges == sources.length) {
+                    sources = Arrays.copyOf(sources, 2 * edges);
+                    targets = Arrays.copyOf(targets, 2 * edges);
+                }
+                sources[edges] = hyponym;
+                targets[edges++] = readVertex(vertices);
+            }
+            skipLine();
+        }
+        final int[] offsets = new int[vertices + 1];
+        for (int e = 0; e < edges; e++) {
+            offsets[sources[e] + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        final int[] positions = Arrays.copyOf(offsets, vertices);
+        final int[] heads = new int[edges];
+        for (int e = 0; e < edges; e++) {
+            heads[positions[sources[e]]++] = targets[e];
+        }
+        digraph = new CompactDigraph(offsets, heads);
+    }
+
+    /**
+     * Connects each noun of synset with synset id.
+     *
+     * @param synset
+     *            synset string (nouns separated by spaces)
+     * @param synsetId
+     *            synset id
+     */
+    private void addNouns(final String synset, final int synsetId) {
+        int begin = 0;
+        while (begin <= synset.length()) {
+            int end = synset.indexOf(' ', begin);
+            if (end == -1) {
+                end = synset.length();
+            }
+            if (end > begin) {
+                if (pairs == pairNouns.length) {
+                    pairNouns = Arrays.copyOf(pairNouns, 2 * pairs);
+                    pairIds = Arrays.copyOf(pairIds, 2 * pairs);
+                }
+                pairNouns[pairs] = synset.substring(begin, end);
+                pairIds[pairs++] = synsetId;
+            }
+            begin = end + 1;
+        }
+    }
+
+    /**
+     * Maps file into memory and prepares parser.
+     *
+     * @param fileName
+     *            name of file
+     */
+    private void open(final String fileName) {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+                FileChannel channel = file.getChannel()) {
+            final MappedByteBuffer mapped = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer = mapped;
+            position = 0;
+            bytesRead += mapped.limit();
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Could not read " + fileName,
+                    ex);
+        }
+    }
+
+    /**
+     * Reads vertex index and checks it.
+     *
+     * @param vertices
+     *            number of vertices
+     * @return vertex index
+     */
+    private int readVertex(final int vertices) {
+        final int v = readInt();
+        if (v >= vertices) {
+            throw new IllegalArgumentException(
+                    "Graph description is incorrect");
+        }
+        return v;
+    }
+
+    /**
+     * Parses non-negative decimal number at current position.
+     *
+     * @return parsed number
+     */
+    private int readInt() {
+        final int limit = buffer.limit();
+        final int start = position;
+        long value = 0;
+        while (position < limit) {
+            final int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Number is too large");
+            }
+            position++;
+        }
+        if (position == start) {
+            throw new IllegalArgumentException("Number expected at byte "
+                    + start);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads field up to the next comma or end of line.
+     *
+     * @return field content
+     */
+    private String readField() {
+        final int limit = buffer.limit();
+        final int start = position;
+        while (position < limit) {
+            final byte b = buffer.get(position);
+            if (b == ',' || b == '\n' || b == '\r') {
+                break;
+            }
+            position++;
+        }
+        final byte[] bytes = new byte[position - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Checks that current byte is expected one and skips it.
+     *
+     * @param expected
+     *            expected byte
+     */
+    private void expect(final char expected) {
+        if (position >= buffer.limit() || buffer.get(position) != expected) {
+            throw new IllegalArgumentException("'" + expected
+                    + "' expected at byte " + position);
+        }
+        position++;
+    }
+
+    /**
+     * Skips the rest of the line including line separator.
+     */
+    private void skipLine() {
+        final int limit = buffer.limit();
+        while (position < limit && buffer.get(position++) != '\n') {
+            continue;
+        }
+    }
+
+    /**
+     * Skips line separator if the current line is empty.
+     *
+     * @return true if empty line was skipped; false otherwise
+     */
+    private boolean skipEmptyLine() {
+        final byte b = buffer.get(position);
+        if (b == '\r' || b == '\n') {
+            skipLine();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The WordNetRouter class spreads WordNet queries over several local worker
+ * processes (see WordNetWorker), so throughput isn't limited by heap and GC
+ * budget of one process.
+ * <p>
+ * Workers are started by the router with the same class path and talk to it
+ * over loopback sockets only. Each worker owns the whole graph; pairs of
+ * nouns are sharded by hash of the unordered pair, so the same query always
+ * goes to the same worker and caches of workers hold disjoint sets of pairs.
+ * A batch is split into one request per worker, all requests are sent before
+ * answers are read, so workers process their parts simultaneously. Batches
+ * are processed one by one, so the object is thread-safe.
+ *
+ * @author Sergey Esipenko
+ */
+public class WordNetRouter implements Closeable {
+
+    /**
+     * Number of pairs sent in one batch by main().
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * Worker processes.
+     */
+    private final Process[] processes;
+
+    /**
+     * Connections to workers.
+     */
+    private final Socket[] sockets;
+
+    /**
+     * Input streams of connections.
+     */
+    private final DataInputStream[] inputs;
+
+    /**
+     * Output streams of connections.
+     */
+    private final DataOutputStream[] outputs;
+
+    /**
+     * Constructor starts workers and connects to them.
+     *
+     * @param workers
+     *            number of worker processes
+     * @param workerArgs
+     *            command line arguments of workers (synsets file, hypernyms
+     *            file, optional cache capacity)
+     */
+    public WordNetRouter(final int workers, final String... workerArgs) {
+        Utils.check(workers > 0, new IllegalArgumentException(
+                "Number of workers must be positive"));
+        processes = new Process[workers];
+        sockets = new Socket[workers];
+        inputs = new DataInputStream[workers];
+        outputs = new DataOutputStream[workers];
+        final List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(WordNetWorker.class.getName());
+        command.addAll(Arrays.asList(workerArgs));
+        try {
+            // workers load WordNet simultaneously
+            for (int k = 0; k < workers; k++) {
+                processes[k] = new ProcessBuilder(command).redirectError(
+                        ProcessBuilder.Redirect.INHERIT).start();
+            }
+            for (int k = 0; k < workers; k++) {
+                connect(k);
+            }
+        } catch (IOException ex) {
+            close();
+            throw new IllegalStateException("Could not start workers", ex);
+        }
+    }
+
+    /**
+     * Performs queries for noun pairs (nounsA[i], nounsB[i]) by workers.
+     * Throws IllegalArgumentException if some noun is unknown.
+     *
+     * @param nounsA
+     *            first nouns of pairs
+     * @param nounsB
+     *            second nouns of pairs
+     * @param distances
+     *            array for storing distances between nouns
+     * @param ancestors
+     *            array for storing synsets of common ancestors in shortest
+     *            ancestral paths
+     */
+    public final synchronized void batchSap(final String[] nounsA,
+            final String[] nounsB, final int[] distances,
+            final String[] ancestors) {
+        Utils.check(nounsA.length == nounsB.length
+                && nounsA.length == distances.length
+                && nounsA.length == ancestors.length,
+                new IllegalArgumentException(
+                        "Arrays must have the same length"));
+        final int workers = sockets.length;
+        final int[] shards = new int[nounsA.length];
+        final int[] counts = new int[workers];
+        for (int i = 0; i < nounsA.length; i++) {
+            shards[i] = shard(nounsA[i], nounsB[i], workers);
+            counts[shards[i]]++;
+        }
+        String error = null;
+        try {
+            for (int k = 0; k < workers; k++) {
+                outputs[k].writeInt(counts[k]);
+                for (int i = 0; i < nounsA.length; i++) {
+                    if (shards[i] == k) {
+                        outputs[k].writeUTF(nounsA[i]);
+                        outputs[k].writeUTF(nounsB[i]);
+                    }
+                }
+                outputs[k].flush();
+            }
+            // all answers are read even after error to keep streams in sync
+            for (int k = 0; k < workers; k++) {
+                if (inputs[k].readInt() == WordNetWorker.ERROR) {
+                    error = inputs[k].readUTF();
+                    continue;
+                }
+                for (int i = 0; i < nounsA.length; i++) {
+                    if (shards[i] == k) {
+                        distances[i] = inputs[k].readInt();
+                        ancestors[i] = inputs[k].readUTF();
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Worker failed", ex);
+        }
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    /**
+     * Distance between nounA and nounB (length of ancestral path).
+     *
+     * @param nounA
+     *            first noun
+     * @param nounB
+     *            second noun
+     * @return shortest possible length of ancestral path between any synset of
+     *         nounA and any synset of nounB.
+     */
+    public final int distance(final String nounA, final String nounB) {
+        final int[] distances = new int[1];
+        batchSap(new String[] {nounA}, new String[] {nounB}, distances,
+                new String[1]);
+        return distances[0];
+    }
+
+    /**
+     * A synset that is the common ancestor of nounA and nounB in a shortest
+     * ancestral path.
+     *
+     * @param nounA
+     *            first noun
+     * @param nounB
+     *            second noun
+     * @return synset which is ancestor of nounA and nounB and lay on any
+     *         shortest ancestral path.
+     */
+    public final String sap(final String nounA, final String nounB) {
+        final String[] ancestors = new String[1];
+        batchSap(new String[] {nounA}, new String[] {nounB}, new int[1],
+                ancestors);
+        return ancestors[0];
+    }
+
+    /**
+     * Closes connections and stops workers: a worker exits when its standard
+     * input is closed.
+     */
+    @Override
+    public final synchronized void close() {
+        for (int k = 0; k < processes.length; k++) {
+            try {
+                if (sockets[k] != null) {
+                    sockets[k].close();
+                }
+                if (processes[k] != null) {
+                    processes[k].getOutputStream().close();
+                    processes[k].waitFor();
+                }
+            } catch (IOException ex) {
+                if (processes[k] != null) {
+                    processes[k].destroy();
+                }
+            } catch (InterruptedException ex) {
+                processes[k].destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Test harness: answers pairs of nouns from standard input by workers
+     * and prints answers in the format of WordNet.main().
+     *
+     * @param args
+     *            command line arguments (synsets file, hypernyms file, number
+     *            of workers, optional cache capacity of workers)
+     */
+    public static void main(final String[] args) {
+        final String[] workerArgs;
+        if (args.length > 3) {
+            workerArgs = new String[] {args[0], args[1], args[3]};
+        } else {
+            workerArgs = new String[] {args[0], args[1]};
+        }
+        try (WordNetRouter router = new WordNetRouter(
+                Integer.parseInt(args[2]), workerArgs)) {
+            final String[] nounsA = new String[BATCH_SIZE];
+            final String[] nounsB = new String[BATCH_SIZE];
+            while (!StdIn.isEmpty()) {
+                int count = 0;
+                while (count < BATCH_SIZE && !StdIn.isEmpty()) {
+                    nounsA[count] = StdIn.readString();
+                    nounsB[count++] = StdIn.readString();
+                }
+                final int[] distances = new int[count];
+                final String[] ancestors = new String[count];
+                router.batchSap(Arrays.copyOf(nounsA, count),
+                        Arrays.copyOf(nounsB, count), distances, ancestors);
+                for (int i = 0; i < count; i++) {
+                    StdOut.printf("distance = %d, sap = %s\n", distances[i],
+                            ancestors[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Chooses worker for pair of nouns. The pair is unordered, like keys of
+     * SapCache.
+     *
+     * @param nounA
+     *            first noun
+     * @param nounB
+     *            second noun
+     * @param workers
+     *            number of workers
+     * @return index of worker
+     */
+    private static int shard(final String nounA, final String nounB,
+            final int workers) {
+        // the sum doesn't depend on order, multiplication mixes its bits
+        final int hash = (nounA.hashCode() + nounB.hashCode()) * 0x9E3779B9;
+        return (hash >>> 1) % workers;
+    }
+
+    /**
+     * Waits for worker to announce its port and connects to it.
+     *
+     * @param k
+     *            index of worker
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private void connect(final int k) throws IOException {
+        final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(processes[k].getInputStream(),
+                        QueryPipeline.CHARSET));
+        final String line = reader.readLine();
+        if (line == null || !line.startsWith(WordNetWorker.PORT_PREFIX)) {
+            throw new IOException("Worker " + k + " didn't start");
+        }
+        sockets[k] = new Socket(InetAddress.getLoopbackAddress(),
+                Integer.parseInt(line.substring(
+                        WordNetWorker.PORT_PREFIX.length())));
+        sockets[k].setTcpNoDelay(true);
+        inputs[k] = new DataInputStream(new BufferedInputStream(
+                sockets[k].getInputStream(), WordNetWorker.BUFFER_SIZE));
+        outputs[k] = new DataOutputStream(new BufferedOutputStream(
+                sockets[k].getOutputStream(), WordNetWorker.BUFFER_SIZE));
+    }
+}
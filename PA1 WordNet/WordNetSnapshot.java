@@ -0,0 +1,326 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The WordNetSnapshot class reads and writes binary snapshots of built WordNet
+ * data: synsets, nouns index, digraph and (optionally) ancestor index. Loading
+ * a snapshot doesn't parse text and doesn't check the graph again.
+ * <p>
+ * Snapshot is a sequence of big-endian int values and byte blobs: header
+ * (magic, version), digraph in CSR format, synsets, sorted nouns with synset
+ * identifiers, flag of ancestor index and the index itself. Strings are
+ * stored as UTF-8 blobs with int offsets. The file is mapped into memory and
+ * int arrays are copied with bulk operations.
+ *
+ * @author Sergey Esipenko
+ */
+public class WordNetSnapshot {
+
+    /**
+     * Magic number of snapshot files ("WNSS").
+     */
+    private static final int MAGIC = 0x574E5353;
+
+    /**
+     * Version of snapshot format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Charset of stored strings.
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Size of output buffer.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Synset strings by identifier.
+     */
+    private final String[] synsets;
+
+    /**
+     * Index from noun to identifiers of its synsets.
+     */
+    private final NounIndex nounIndex;
+
+    /**
+     * Digraph of hypernym relations.
+     */
+    private final CompactDigraph digraph;
+
+    /**
+     * Ancestor index; null if snapshot doesn't contain it.
+     */
+    private final AncestorIndex ancestorIndex;
+
+    /**
+     * Buffer with content of the snapshot.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Reads snapshot file.
+     *
+     * @param fileName
+     *            name of snapshot file
+     */
+    public WordNetSnapshot(final String fileName) {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+                FileChannel channel = file.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Could not read " + fileName,
+                    ex);
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalArgumentException(fileName
+                    + " isn't a WordNet snapshot");
+        }
+        final int vertices = buffer.getInt();
+        digraph = new CompactDigraph(readInts(vertices + 1),
+                readInts(buffer.getInt()));
+        synsets = readStrings(vertices);
+        final String[] nouns = readStrings(buffer.getInt());
+        final int[] idOffsets = readInts(nouns.length + 1);
+        nounIndex = new NounIndex(nouns, idOffsets,
+                readInts(idOffsets[nouns.length]));
+        if (buffer.getInt() != 0) {
+            final int[] begins = readInts(vertices);
+            final int[] ends = readInts(vertices);
+            final int size = buffer.getInt();
+            ancestorIndex = new AncestorIndex(begins, ends, readInts(size),
+                    readInts(size));
+        } else {
+            ancestorIndex = null;
+        }
+        buffer = null;
+    }
+
+    /**
+     * Returns synset strings by identifier.
+     *
+     * @return array of synsets
+     */
+    public final String[] getSynsets() {
+        return synsets;
+    }
+
+    /**
+     * Returns index from noun to identifiers of its synsets.
+     *
+     * @return nouns index
+     */
+    public final NounIndex getNounIndex() {
+        return nounIndex;
+    }
+
+    /**
+     * Returns digraph of hypernym relations.
+     *
+     * @return digraph of hypernyms
+     */
+    public final CompactDigraph getDigraph() {
+        return digraph;
+    }
+
+    /**
+     * Returns ancestor index.
+     *
+     * @return ancestor index; null if snapshot doesn't contain it
+     */
+    public final AncestorIndex getAncestorIndex() {
+        return ancestorIndex;
+    }
+
+    /**
+     * Writes snapshot file.
+     *
+     * @param fileName
+     *            name of snapshot file
+     * @param synsets
+     *            synset strings by identifier
+     * @param nounIndex
+     *            index from noun to identifiers of its synsets
+     * @param digraph
+     *            digraph of hypernym relations
+     * @param ancestorIndex
+     *            ancestor index (may be null)
+     */
+    public static void write(final String fileName, final String[] synsets,
+            final NounIndex nounIndex,
+            final CompactDigraph digraph, final AncestorIndex ancestorIndex) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName),
+                        OUTPUT_BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(digraph.V());
+            // ranges of grown digraph may have gaps: write them packed
+            int offset = 0;
+            for (int v = 0; v < digraph.V(); v++) {
+                out.writeInt(offset);
+                offset += digraph.outdegree(v);
+            }
+            out.writeInt(offset);
+            out.writeInt(digraph.E());
+            for (int v = 0; v < digraph.V(); v++) {
+                for (int e = digraph.begin(v); e < digraph.end(v); e++) {
+                    out.writeInt(digraph.target(e));
+                }
+            }
+            writeStrings(out, synsets);
+            // added nouns aren't sorted and ranges may have gaps
+            final String[] nouns = nounIndex.nouns().toArray(
+                    new String[nounIndex.size()]);
+            Arrays.sort(nouns);
+            final int[] positions = new int[nouns.length];
+            for (int i = 0; i < nouns.length; i++) {
+                positions[i] = nounIndex.find(nouns[i]);
+            }
+            out.writeInt(nouns.length);
+            writeStrings(out, nouns);
+            offset = 0;
+            for (int p : positions) {
+                out.writeInt(offset);
+                offset += nounIndex.end(p) - nounIndex.begin(p);
+            }
+            out.writeInt(offset);
+            final int[] ids = nounIndex.ids();
+            for (int p : positions) {
+                for (int i = nounIndex.begin(p); i < nounIndex.end(p); i++) {
+                    out.writeInt(ids[i]);
+                }
+            }
+            if (ancestorIndex == null) {
+                out.writeInt(0);
+            } else {
+                out.writeInt(1);
+                writeAncestorIndex(out, ancestorIndex, digraph.V());
+            }
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Could not write " + fileName,
+                    ex);
+        }
+    }
+
+    /**
+     * Builds WordNet from text files and writes its snapshot.
+     *
+     * @param args
+     *            command line arguments (synsets file, hypernyms file,
+     *            snapshot file, optional "index" to include ancestor index)
+     */
+    public static void main(final String[] args) {
+        SapFinderFactory factory = ThreadLocalSapFinder
+                .factory(TwoWaySapFinder.FACTORY);
+        if (args.length > 3 && "index".equals(args[3])) {
+            factory = AncestorIndexSapFinder.FACTORY;
+        }
+        WordNet wordnet = new WordNet(args[0], args[1], factory);
+        wordnet.save(args[2]);
+        long start = System.nanoTime();
+        WordNet.load(args[2]);
+        StdOut.printf("snapshot loaded in %.1f ms\n",
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Writes ancestor index.
+     *
+     * @param out
+     *            output stream
+     * @param index
+     *            ancestor index
+     * @param vertices
+     *            number of vertices
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static void writeAncestorIndex(final DataOutputStream out,
+            final AncestorIndex index, final int vertices) throws IOException {
+        for (int v = 0; v < vertices; v++) {
+            out.writeInt(index.begin(v));
+        }
+        for (int v = 0; v < vertices; v++) {
+            out.writeInt(index.end(v));
+        }
+        out.writeInt(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            out.writeInt(index.ancestor(i));
+        }
+        for (int i = 0; i < index.size(); i++) {
+            out.writeInt(index.distance(i));
+        }
+    }
+
+    /**
+     * Writes strings as offsets followed by UTF-8 blob.
+     *
+     * @param out
+     *            output stream
+     * @param strings
+     *            strings to write
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static void writeStrings(final DataOutputStream out,
+            final String[] strings) throws IOException {
+        final byte[][] encoded = new byte[strings.length][];
+        int offset = 0;
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(CHARSET);
+            out.writeInt(offset);
+            offset += encoded[i].length;
+        }
+        out.writeInt(offset);
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads int array.
+     *
+     * @param length
+     *            length of array
+     * @return array read from buffer
+     */
+    private int[] readInts(final int length) {
+        final int[] array = new int[length];
+        final IntBuffer ints = buffer.asIntBuffer();
+        ints.get(array);
+        buffer.position(buffer.position() + 4 * length);
+        return array;
+    }
+
+    /**
+     * Reads strings written by writeStrings().
+     *
+     * @param count
+     *            number of strings
+     * @return array of strings
+     */
+    private String[] readStrings(final int count) {
+        final int[] offsets = readInts(count + 1);
+        final byte[] blob = new byte[offsets[count]];
+        buffer.get(blob);
+        final String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = new String(blob, offsets[i],
+                    offsets[i + 1] - offsets[i], CHARSET);
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * The WordNetWorker class serves batches of WordNet queries over loopback
+ * sockets. It is started as a separate process by WordNetRouter, each worker
+ * owns its own WordNet, cache and heap.
+ * <p>
+ * Protocol (DataOutputStream encoding): request is the number of pairs
+ * followed by pairs of nouns; response is the same number followed by
+ * distances and synsets of common ancestors, or -1 followed by error message
+ * if some noun is unknown. Each connection is served by its own thread,
+ * batches are answered by WordNet.batchSap() in parallel. The worker exits
+ * when its standard input is closed, so it never outlives the router.
+ *
+ * @author Sergey Esipenko
+ */
+public final class WordNetWorker {
+
+    /**
+     * Status of failed batch.
+     */
+    public static final int ERROR = -1;
+
+    /**
+     * Size of socket stream buffers.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Prefix of the line announcing port of the worker.
+     */
+    static final String PORT_PREFIX = "port ";
+
+    /**
+     * Private constructor. Prevents from instancing.
+     */
+    private WordNetWorker() {
+    }
+
+    /**
+     * Loads WordNet, announces port on standard output and serves
+     * connections until standard input is closed.
+     *
+     * @param args
+     *            command line arguments (synsets file, hypernyms file,
+     *            optional cache capacity)
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public static void main(final String[] args) throws IOException {
+        final WordNet wordnet = new WordNet(args[0], args[1]);
+        if (args.length > 2) {
+            wordnet.setCache(new SapCache<String>(Integer.parseInt(args[2]),
+                    SapCache.EvictionPolicy.LRU));
+        }
+        final ServerSocket server = new ServerSocket(0, 0,
+                InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        serve(server.accept(), wordnet);
+                    } catch (IOException ex) {
+                        return;
+                    }
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println(PORT_PREFIX + server.getLocalPort());
+        System.out.flush();
+        while (System.in.read() != -1) {
+            continue;
+        }
+        server.close();
+    }
+
+    /**
+     * Starts a thread serving connection.
+     *
+     * @param socket
+     *            accepted connection
+     * @param wordnet
+     *            WordNet answering queries
+     */
+    private static void serve(final Socket socket, final WordNet wordnet) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    socket.setTcpNoDelay(true);
+                    final DataInputStream in = new DataInputStream(
+                            new BufferedInputStream(socket.getInputStream(),
+                                    BUFFER_SIZE));
+                    final DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(
+                                    socket.getOutputStream(), BUFFER_SIZE));
+                    while (true) {
+                        answer(in, out, wordnet);
+                    }
+                } catch (IOException ex) {
+                    return; // the router has closed connection
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException ex) {
+                        return;
+                    }
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads one batch and writes its answers.
+     *
+     * @param in
+     *            input stream of the connection
+     * @param out
+     *            output stream of the connection
+     * @param wordnet
+     *            WordNet answering queries
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static void answer(final DataInputStream in,
+            final DataOutputStream out, final WordNet wordnet)
+            throws IOException {
+        final int count = in.readInt();
+        final String[] nounsA = new String[count];
+        final String[] nounsB = new String[count];
+        for (int i = 0; i < count; i++) {
+            nounsA[i] = in.readUTF();
+            nounsB[i] = in.readUTF();
+        }
+        final int[] distances = new int[count];
+        final String[] ancestors = new String[count];
+        try {
+            wordnet.batchSap(nounsA, nounsB, distances, ancestors);
+        } catch (IllegalArgumentException ex) {
+            out.writeInt(ERROR);
+            out.writeUTF(String.valueOf(ex.getMessage()));
+            out.flush();
+            return;
+        }
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(distances[i]);
+            out.writeUTF(ancestors[i]);
+        }
+        out.flush();
+    }
+}
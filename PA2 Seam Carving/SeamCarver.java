@@ -8,24 +8,46 @@ public class SeamCarver {
     private static final int COLOR_MASK = (1 << COLOR_BITS) - 1;
     private static final int MIN_IMAGE_SIZE = 1;
     private static final int INFINITY = Integer.MAX_VALUE - MAX_ENERGY;
+    private static final int DIR_BITS = 2;
+    private static final int DIR_MASK = (1 << DIR_BITS) - 1;
+    private static final int DIRS_PER_WORD = Long.SIZE / DIR_BITS;
 
     private final Picture originalPicture;
     private Picture currentPicture;
 
+    private final boolean compact;
     private boolean transposed = false;
 
     private int[][] colors;
+    // energies of colors, updated near removed seams only
+    private int[][] energies;
 
     private int[][] minEnergy; // use long[][] for large image!!!
     private int[][] tMinEnergy; // use long[][] for large image!!!
     private byte[][] prevCoord;
     private byte[][] tPrevCoord;
 
+    // compact mode: two rows of energies and 2-bit directions (dx + 1)
+    private long[][] energyRows;
+    private long[] directions;
+
     public SeamCarver(Picture picture) {
+        this(picture, false);
+    }
+
+    // compact mode keeps two rows of cumulative energies (long, so large
+    // images don't overflow) and 2-bit back-pointers: ~1/40 of DP memory
+    public SeamCarver(Picture picture, boolean compact) {
         this.originalPicture = new Picture(picture);
         this.currentPicture = originalPicture;
         this.colors = getColors(picture);
-        prepareDynProgArrays();
+        this.energies = computeEnergies();
+        this.compact = compact;
+        if (compact) {
+            prepareCompactArrays();
+        } else {
+            prepareDynProgArrays();
+        }
     }
 
     public Picture picture() {
@@ -111,6 +133,19 @@ public class SeamCarver {
         }
     }
 
+    private void prepareCompactArrays() {
+        final int width = originalPicture.width();
+        final int height = originalPicture.height();
+        energyRows = new long[2][Math.max(width, height)];
+        // images only shrink, so the larger orientation is enough
+        directions = new long[Math.max(height * words(width),
+                width * words(height))];
+    }
+
+    private static int words(final int pixels) {
+        return (pixels + DIRS_PER_WORD - 1) / DIRS_PER_WORD;
+    }
+
     private Picture obtainCurrentPicture() {
         if (transposed) {
             transpose();
@@ -125,6 +160,22 @@ public class SeamCarver {
     }
 
     private int getEnergyAsInt(int x, int y) {
+        return energies[y][x];
+    }
+
+    private int[][] computeEnergies() {
+        final int width = colors[0].length;
+        final int height = colors.length;
+        final int[][] result = new int[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                result[y][x] = computeEnergy(x, y);
+            }
+        }
+        return result;
+    }
+
+    private int computeEnergy(int x, int y) {
         if (x == 0 || x + 1 == colors[0].length || y == 0
                 || y + 1 == colors.length) {
             return MAX_ENERGY;
@@ -149,6 +200,7 @@ public class SeamCarver {
     private void transpose() {
         this.transposed = !transposed;
         this.colors = transposition(colors);
+        this.energies = transposition(energies);
         swapMinEnergyArrays();
         swapPrevCooordArrays();
     }
@@ -170,6 +222,9 @@ public class SeamCarver {
     }
 
     private int[] getVerticalSeam() {
+        if (compact) {
+            return getVerticalSeamCompact();
+        }
         final int width = colors[0].length;
         final int height = colors.length;
         Arrays.fill(minEnergy[0], 0, width, 0);
@@ -204,6 +259,60 @@ public class SeamCarver {
         return seam;
     }
 
+    private int[] getVerticalSeamCompact() {
+        final int width = colors[0].length;
+        final int height = colors.length;
+        final int words = words(width);
+        long[] current = energyRows[0];
+        long[] next = energyRows[1];
+        Arrays.fill(current, 0, width, 0);
+        for (int y = 0; y < height; y++) {
+            // directions into row y + 1 are stored at row y
+            final int base = y * words;
+            Arrays.fill(next, 0, width, Long.MAX_VALUE);
+            for (int x = 0; x < width; x++) {
+                final long newEnergy = current[x] + getEnergyAsInt(x, y);
+                final int from = Math.max(x - 1, 0);
+                final int to = Math.min(x + 1, width - 1);
+                for (int nx = from; nx <= to; nx++) {
+                    if (next[nx] > newEnergy) {
+                        next[nx] = newEnergy;
+                        setDirection(base, nx, nx - x);
+                    }
+                }
+            }
+            final long[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+        int cx = 0;
+        for (int x = 1; x < width; x++) {
+            if (current[cx] > current[x]) {
+                cx = x;
+            }
+        }
+        final int[] seam = new int[height];
+        for (int y = height - 1; y >= 0; y--) {
+            cx += getDirection(y * words, cx);
+            seam[y] = cx;
+        }
+        return seam;
+    }
+
+    // stores dx + 1, so the back-pointer is its negation
+    private void setDirection(final int base, final int x, final int dx) {
+        final int i = base + x / DIRS_PER_WORD;
+        final int shift = (x % DIRS_PER_WORD) * DIR_BITS;
+        directions[i] = (directions[i] & ~((long) DIR_MASK << shift))
+                | ((long) (dx + 1) << shift);
+    }
+
+    private int getDirection(final int base, final int x) {
+        final int shift = (x % DIRS_PER_WORD) * DIR_BITS;
+        return 1 - (int) ((directions[base + x / DIRS_PER_WORD] >>> shift)
+                & DIR_MASK);
+    }
+
     private void relaxWithChecks(final int x, final int y) {
         final int newEnergy = minEnergy[y][x] + getEnergyAsInt(x, y);
         for (int dx = -1; dx <= +1; dx++) {
@@ -227,6 +336,18 @@ public class SeamCarver {
             final int[] src = colors[y];
             colors[y] = Arrays.copyOf(src, width - 1);
             System.arraycopy(src, x + 1, colors[y], x, width - 1 - x);
+            final int[] srcEnergies = energies[y];
+            energies[y] = Arrays.copyOf(srcEnergies, width - 1);
+            System.arraycopy(srcEnergies, x + 1, energies[y], x,
+                    width - 1 - x);
+        }
+        // only pixels next to the seam got new neighbours (seam is connected)
+        for (int y = 0; y < seam.length; y++) {
+            final int from = Math.max(seam[y] - 1, 0);
+            final int to = Math.min(seam[y], width - 2);
+            for (int x = from; x <= to; x++) {
+                energies[y][x] = computeEnergy(x, y);
+            }
         }
     }
 